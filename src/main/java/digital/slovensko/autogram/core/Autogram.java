@@ -2,16 +2,26 @@ package digital.slovensko.autogram.core;
 
 import digital.slovensko.autogram.core.errors.AutogramException;
 import digital.slovensko.autogram.core.errors.UnrecognizedException;
+import digital.slovensko.autogram.drivers.DriverRegistry;
 import digital.slovensko.autogram.drivers.TokenDriver;
 import digital.slovensko.autogram.ui.UI;
 import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.x509.CertificateToken;
 import eu.europa.esig.dss.pdfa.PDFAStructureValidator;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 public class Autogram {
     private final UI ui;
+    private final SignatureServices signatureServices = new SignatureServices();
+    private final SigningPipeline signingPipeline = SigningPipeline.buildFromConfiguration(signatureServices);
+    private final HashTreeBatchSigner hashTreeSigner = new HashTreeBatchSigner(signatureServices);
+    private final DriverRegistry driverRegistry = DriverRegistry.buildFromConfiguration();
+    private final TokenSessionPool tokenSessions = TokenSessionPool.buildFromConfiguration();
+    private final KeyEnumerator keyEnumerator = KeyEnumerator.buildFromConfiguration(tokenSessions);
 
     public Autogram(UI ui) {
         this.ui = ui;
@@ -21,12 +31,23 @@ public class Autogram {
         ui.onUIThreadDo(()
         -> ui.startSigning(job, this));
 
+        ui.onWorkThreadDo(()
+        -> prepareInBackground(job));
+
         if (job.shouldCheckPDFCompliance()) {
             ui.onWorkThreadDo(()
             -> checkPDFACompliance(job));
         }
     }
 
+    private void prepareInBackground(SigningJob job) {
+        try {
+            job.prepareDocument();
+        } catch (Exception e) {
+            // signing prepares the job again and reports the error to the user then
+        }
+    }
+
     private void checkPDFACompliance(SigningJob job) {
         var result = new PDFAStructureValidator().validate(job.getDocument());
         if(!result.isCompliant()) {
@@ -37,9 +58,12 @@ public class Autogram {
     public void sign(SigningJob job, SigningKey signingKey) {
         ui.onWorkThreadDo(() -> {
             try {
-                job.signWithKeyAndRespond(signingKey);
+                job.signWithKeyAndRespond(signingKey, signatureServices);
                 ui.onUIThreadDo(()
                 -> ui.onSigningSuccess(job));
+            } catch (AutogramException e) {
+                ui.onUIThreadDo(()
+                -> ui.onSigningFailed(e));
             } catch (DSSException e) {
                 ui.onUIThreadDo(()
                 -> ui.onSigningFailed(AutogramException.createFromDSSException(e)));
@@ -50,28 +74,96 @@ public class Autogram {
         });
     }
 
+    public void batchSign(BatchSigningJob batch) {
+        ui.onUIThreadDo(()
+        -> ui.startBatchSigning(batch, this));
+
+        ui.onWorkThreadDo(()
+        -> batch.getJobs().forEach(this::prepareInBackground));
+    }
+
+    // See SigningPipeline, every job reports its own result to its responder as soon as it is done
+    public void sign(BatchSigningJob batch, SigningKey signingKey) {
+        ui.onWorkThreadDo(() -> {
+            var errors = batch.isHashTree()
+                ? hashTreeSigner.sign(batch, signingKey)
+                : signingPipeline.sign(batch.getJobs(), signingKey).join();
+            ui.onUIThreadDo(()
+            -> ui.onBatchSigningDone(batch, errors));
+        });
+    }
+
+    // First phase of signing for clients holding the key themselves, see SigningJob.prepareSignature
+    public PreparedSignature prepareSignature(SigningJob job, CertificateToken[] certificateChain) {
+        return job.prepareSignature(certificateChain[0], certificateChain, signatureServices);
+    }
+
     public void pickSigningKeyAndThen(Consumer<SigningKey> callback) {
-        var drivers = TokenDriver.getAvailableDrivers();
+        var registryError = driverRegistry.takeError();
+        if (registryError != null) {
+            ui.onUIThreadDo(() -> ui.onPickSigningKeyFailed(registryError));
+            return;
+        }
+
+        var drivers = driverRegistry.getAvailableDrivers();
+        if (keyEnumerator.isEnabled() && !drivers.isEmpty())
+            pickKeyOfAllDriversAndThen(drivers, callback);
+        else
+            pickKeyOfDriverAndThen(drivers, callback);
+    }
+
+    private void pickKeyOfDriverAndThen(List<TokenDriver> drivers, Consumer<SigningKey> callback) {
         ui.pickTokenDriverAndThen(drivers, (driver)
-        -> ui.requestPasswordAndThen(driver, (password)
+        -> requestPasswordIfNeededAndThen(driver, (password)
         -> ui.onWorkThreadDo(()
         -> fetchKeysAndThen(driver, password, (key)
         -> callback.accept(key)))));
     }
 
+    // See KeyEnumerator, drivers waiting for a password are offered in the driver picker when no key turned up
+    private void pickKeyOfAllDriversAndThen(List<TokenDriver> drivers, Consumer<SigningKey> callback) {
+        ui.onWorkThreadDo(() -> {
+            var result = keyEnumerator.enumerate(drivers);
+            if (result.keys().isEmpty() && !result.skippedDrivers().isEmpty()) {
+                ui.onUIThreadDo(()
+                -> pickKeyOfDriverAndThen(result.skippedDrivers(), callback));
+            } else if (result.keys().isEmpty() && !result.errors().isEmpty()) {
+                ui.onUIThreadDo(()
+                -> ui.onPickSigningKeyFailed(result.errors().get(0)));
+            } else {
+                ui.onUIThreadDo(()
+                -> ui.pickKeyAndThen(new ArrayList<>(result.keys()), (privateKey)
+                -> callback.accept(((TokenKeyEntry) privateKey).createSigningKey())));
+            }
+        });
+    }
+
+    private void requestPasswordIfNeededAndThen(TokenDriver driver, Consumer<char[]> callback) {
+        if (tokenSessions.hasSession(driver))
+            callback.accept(null);
+        else
+            ui.requestPasswordAndThen(driver, callback);
+    }
+
     private void fetchKeysAndThen(TokenDriver driver, char[] password, Consumer<SigningKey> callback) {
         try {
-            var token = driver.createTokenWithPassword(password);
-            var keys = token.getKeys();
+            var session = tokenSessions.getSession(driver, password);
+            var keys = session.getKeys();
             ui.onUIThreadDo(()
             -> ui.pickKeyAndThen(keys, (privateKey)
-            -> callback.accept(new SigningKey(token, privateKey))));
+            -> callback.accept(new SigningKey(session, privateKey))));
         } catch (DSSException e) {
+            // a session that failed to log in or list keys is not worth keeping, the next pick starts over
+            tokenSessions.invalidate(driver);
             ui.onUIThreadDo(()
             -> ui.onPickSigningKeyFailed(AutogramException.createFromDSSException(e)));
         }
     }
 
+    public void shutdown() {
+        tokenSessions.closeAll();
+    }
+
     public void checkForUpdate() {
         ui.onWorkThreadDo(() -> {
             if (!Updater.newVersionAvailable())
@@ -0,0 +1,36 @@
+package digital.slovensko.autogram.core;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+
+import java.util.List;
+
+public class BatchSigningJob {
+    private final List<SigningJob> jobs;
+    private final boolean isHashTree;
+
+    public BatchSigningJob(List<SigningJob> jobs) {
+        this(jobs, false);
+    }
+
+    // hash tree batches are signed with one signature over all documents, see HashTreeBatchSigner
+    public BatchSigningJob(List<SigningJob> jobs, boolean isHashTree) {
+        this.jobs = List.copyOf(jobs);
+        this.isHashTree = isHashTree;
+    }
+
+    public List<SigningJob> getJobs() {
+        return jobs;
+    }
+
+    public boolean isHashTree() {
+        return isHashTree;
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    public void onBatchSignFailed(AutogramException e) {
+        jobs.forEach(job -> job.onDocumentSignFailed(e));
+    }
+}
@@ -0,0 +1,85 @@
+package digital.slovensko.autogram.core;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.spi.DSSUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Binary hash tree in the style of RFC 9162, leaves are H(0x00 || document digest) and inner nodes
+// H(0x01 || left || right). The last node of a level without a sibling is carried up unchanged.
+public class HashTree {
+    public record ProofStep(boolean isSiblingLeft, byte[] hash) {
+    }
+
+    private final DigestAlgorithm algorithm;
+    private final List<byte[][]> levels = new ArrayList<>();
+
+    public HashTree(DigestAlgorithm algorithm, List<byte[]> documentDigests) {
+        if (documentDigests.isEmpty())
+            throw new IllegalArgumentException("Hash tree needs at least one leaf");
+
+        this.algorithm = algorithm;
+
+        var level = documentDigests.stream().map(digest -> leaf(algorithm, digest)).toArray(byte[][]::new);
+        levels.add(level);
+        while (level.length > 1) {
+            var parent = new byte[(level.length + 1) / 2][];
+            for (var i = 0; i < parent.length; i++)
+                parent[i] = 2 * i + 1 < level.length ? node(algorithm, level[2 * i], level[2 * i + 1]) : level[2 * i];
+
+            levels.add(parent);
+            level = parent;
+        }
+    }
+
+    public DigestAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getLeafCount() {
+        return levels.get(0).length;
+    }
+
+    public byte[] getRoot() {
+        return levels.get(levels.size() - 1)[0].clone();
+    }
+
+    public List<ProofStep> getProof(int leafIndex) {
+        var proof = new ArrayList<ProofStep>();
+        var index = leafIndex;
+        for (var level : levels.subList(0, levels.size() - 1)) {
+            var sibling = index ^ 1;
+            if (sibling < level.length)
+                proof.add(new ProofStep(sibling < index, level[sibling].clone()));
+
+            index /= 2;
+        }
+
+        return proof;
+    }
+
+    public static boolean verify(DigestAlgorithm algorithm, byte[] documentDigest, List<ProofStep> proof, byte[] root) {
+        var hash = leaf(algorithm, documentDigest);
+        for (var step : proof)
+            hash = step.isSiblingLeft() ? node(algorithm, step.hash(), hash) : node(algorithm, hash, step.hash());
+
+        return Arrays.equals(hash, root);
+    }
+
+    private static byte[] leaf(DigestAlgorithm algorithm, byte[] digest) {
+        var input = new byte[digest.length + 1];
+        input[0] = 0x00;
+        System.arraycopy(digest, 0, input, 1, digest.length);
+        return DSSUtils.digest(algorithm, input);
+    }
+
+    private static byte[] node(DigestAlgorithm algorithm, byte[] left, byte[] right) {
+        var input = new byte[left.length + right.length + 1];
+        input[0] = 0x01;
+        System.arraycopy(left, 0, input, 1, left.length);
+        System.arraycopy(right, 0, input, 1 + left.length, right.length);
+        return DSSUtils.digest(algorithm, input);
+    }
+}
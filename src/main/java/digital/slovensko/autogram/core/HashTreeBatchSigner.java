@@ -0,0 +1,172 @@
+package digital.slovensko.autogram.core;
+
+import com.google.gson.Gson;
+import digital.slovensko.autogram.core.Metrics.Labels;
+import digital.slovensko.autogram.core.Metrics.Phase;
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.core.errors.UnrecognizedException;
+import eu.europa.esig.dss.cades.CAdESSignatureParameters;
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.MimeTypeEnum;
+import eu.europa.esig.dss.enumerations.SignatureLevel;
+import eu.europa.esig.dss.enumerations.SignaturePackaging;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.InMemoryDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Signs a whole batch with one token operation. Documents are hashed in parallel into a HashTree, its root is written
+// to a small JSON manifest which gets a detached CAdES signature, and every document gets a ZIP with the manifest,
+// the signature and its own path to the root. Documents are signed as they are, no XDC or container is built.
+public class HashTreeBatchSigner {
+    public static final String MANIFEST_NAME = "root.json";
+    public static final String SIGNATURE_NAME = "root.json.p7s";
+    public static final String PROOF_NAME = "proof.json";
+
+    private static final Gson gson = new Gson();
+
+    private final SignatureServices services;
+
+    public HashTreeBatchSigner(SignatureServices services) {
+        this.services = services;
+    }
+
+    private record Manifest(String type, String digestAlgorithm, int leafCount, String root) {
+    }
+
+    private record Proof(String documentName, int leafIndex, String documentDigest, List<ProofStep> path) {
+    }
+
+    private record ProofStep(String position, String hash) {
+    }
+
+    // Every job is responded to, the returned errors are those of the failed ones
+    public List<AutogramException> sign(BatchSigningJob batch, SigningKey key) {
+        var jobs = batch.getJobs();
+        var digestAlgorithm = jobs.get(0).getParameters().getDigestAlgorithm();
+        var errors = Collections.synchronizedList(new ArrayList<AutogramException>());
+
+        var digests = jobs.parallelStream().map(job -> {
+            try {
+                return Base64.getDecoder().decode(job.getDocument().getDigest(digestAlgorithm));
+            } catch (RuntimeException e) {
+                fail(job, e, errors);
+                return null;
+            }
+        }).toList();
+
+        var signedJobs = new ArrayList<SigningJob>();
+        var leaves = new ArrayList<byte[]>();
+        for (var i = 0; i < jobs.size(); i++) {
+            if (digests.get(i) != null) {
+                signedJobs.add(jobs.get(i));
+                leaves.add(digests.get(i));
+            }
+        }
+
+        if (leaves.isEmpty())
+            return List.copyOf(errors);
+
+        HashTree tree;
+        DSSDocument manifest;
+        DSSDocument signature;
+        try {
+            tree = new HashTree(digestAlgorithm, leaves);
+            manifest = buildManifest(tree);
+            signature = signManifest(manifest, digestAlgorithm, key);
+        } catch (RuntimeException e) {
+            signedJobs.forEach(job -> fail(job, e, errors));
+            return List.copyOf(errors);
+        }
+
+        IntStream.range(0, signedJobs.size()).parallel().forEach(i -> {
+            var job = signedJobs.get(i);
+            try {
+                var proof = buildProofContainer(job.getDocument(), i, leaves.get(i), tree, manifest, signature);
+                job.onDocumentSigned(new SignedDocument(proof, key.getCertificate()), key);
+            } catch (RuntimeException e) {
+                fail(job, e, errors);
+            }
+        });
+
+        return List.copyOf(errors);
+    }
+
+    private DSSDocument signManifest(DSSDocument manifest, DigestAlgorithm digestAlgorithm, SigningKey key) {
+        var parameters = new CAdESSignatureParameters();
+        parameters.setSignatureLevel(SignatureLevel.CAdES_BASELINE_B);
+        parameters.setSignaturePackaging(SignaturePackaging.DETACHED);
+        parameters.setDigestAlgorithm(digestAlgorithm);
+        parameters.setSigningCertificate(key.getCertificate());
+        parameters.setCertificateChain(key.getCertificateChain());
+
+        var service = services.getCAdESService();
+        var labels = new Labels("CAdES", null, key.getDriverName());
+        var dataToSign = Metrics.time(Phase.GET_DATA_TO_SIGN, labels, () -> service.getDataToSign(manifest, parameters));
+        var signatureValue = key.sign(dataToSign, digestAlgorithm);
+
+        return Metrics.time(Phase.SIGN_DOCUMENT, labels, () -> service.signDocument(manifest, parameters, signatureValue));
+    }
+
+    private static DSSDocument buildManifest(HashTree tree) {
+        var manifest = new Manifest("autogram-hash-tree", tree.getAlgorithm().name(), tree.getLeafCount(),
+            Base64.getEncoder().encodeToString(tree.getRoot()));
+
+        return new InMemoryDocument(gson.toJson(manifest).getBytes(StandardCharsets.UTF_8), MANIFEST_NAME,
+            MimeTypeEnum.JSON);
+    }
+
+    private static DSSDocument buildProofContainer(DSSDocument document, int leafIndex, byte[] documentDigest,
+            HashTree tree, DSSDocument manifest, DSSDocument signature) {
+        var path = tree.getProof(leafIndex).stream()
+            .map(step -> new ProofStep(step.isSiblingLeft() ? "left" : "right",
+                Base64.getEncoder().encodeToString(step.hash())))
+            .toList();
+        var proof = new Proof(document.getName(), leafIndex, Base64.getEncoder().encodeToString(documentDigest), path);
+
+        var output = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(output)) {
+            writeEntry(zip, MANIFEST_NAME, manifest);
+            writeEntry(zip, SIGNATURE_NAME, signature);
+            zip.putNextEntry(new ZipEntry(PROOF_NAME));
+            zip.write(gson.toJson(proof).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        var name = (document.getName() != null ? document.getName() : "document") + ".proof.zip";
+        return new InMemoryDocument(output.toByteArray(), name, MimeTypeEnum.ZIP);
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, DSSDocument document) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        try (var stream = document.openStream()) {
+            stream.transferTo(zip);
+        }
+        zip.closeEntry();
+    }
+
+    private static void fail(SigningJob job, RuntimeException e, List<AutogramException> errors) {
+        AutogramException error;
+        if (e instanceof AutogramException autogramException)
+            error = autogramException;
+        else if (e instanceof DSSException dssException)
+            error = AutogramException.createFromDSSException(dssException);
+        else
+            error = new UnrecognizedException(e);
+
+        errors.add(error);
+        job.onDocumentSignFailed(error);
+    }
+}
@@ -0,0 +1,90 @@
+package digital.slovensko.autogram.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.core.errors.UnrecognizedException;
+import digital.slovensko.autogram.drivers.TokenDriver;
+import eu.europa.esig.dss.model.DSSException;
+
+// Lists keys of all drivers at once, so the wait is the slowest driver instead of all of them one after another.
+// Drivers asking for a password are only listed when their session is already open, the others are left for the
+// driver picker. A driver that fails or does not answer in time is left out, its session stays in the pool if it
+// comes up later.
+public class KeyEnumerator {
+    public record Result(List<TokenKeyEntry> keys, List<TokenDriver> skippedDrivers, List<AutogramException> errors) {
+    }
+
+    private final TokenSessionPool tokenSessions;
+    private final boolean isEnabled;
+    private final Duration timeout;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "autogram-key-enumeration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public KeyEnumerator(TokenSessionPool tokenSessions, boolean isEnabled, Duration timeout) {
+        this.tokenSessions = tokenSessions;
+        this.isEnabled = isEnabled;
+        this.timeout = timeout;
+    }
+
+    public static KeyEnumerator buildFromConfiguration(TokenSessionPool tokenSessions) {
+        var isEnabled = Boolean.parseBoolean(Configuration.getProperty("token.enumeration.concurrent"));
+        var timeout = Long.parseLong(Configuration.getProperty("token.enumeration.timeoutSeconds"));
+        return new KeyEnumerator(tokenSessions, isEnabled, Duration.ofSeconds(timeout));
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public Result enumerate(List<TokenDriver> drivers) {
+        var probed = new ArrayList<TokenDriver>();
+        var skipped = new ArrayList<TokenDriver>();
+        for (var driver : drivers) {
+            if (driver.needsPassword() && !tokenSessions.hasSession(driver))
+                skipped.add(driver);
+            else
+                probed.add(driver);
+        }
+
+        var probes = probed.stream().map(driver -> CompletableFuture
+                .supplyAsync(() -> listKeys(driver), executor)
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)).toList();
+
+        var keys = new ArrayList<TokenKeyEntry>();
+        var errors = new ArrayList<AutogramException>();
+        for (var probe : probes) {
+            try {
+                keys.addAll(probe.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof DSSException dssException)
+                    errors.add(AutogramException.createFromDSSException(dssException));
+                else if (!(e.getCause() instanceof TimeoutException))
+                    errors.add(new UnrecognizedException(e.getCause()));
+            }
+        }
+
+        return new Result(keys, skipped, errors);
+    }
+
+    private List<TokenKeyEntry> listKeys(TokenDriver driver) {
+        try {
+            var session = tokenSessions.getSession(driver, null);
+            return session.getKeys().stream().map(key -> new TokenKeyEntry(session, key)).toList();
+        } catch (DSSException e) {
+            tokenSessions.invalidate(driver);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package digital.slovensko.autogram.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Process wide signing metrics. Histograms are striped LongAdders keyed by phase and labels, recording is a map
+// lookup and two increments so it can stay on the hot path.
+public class Metrics {
+    public enum Phase {
+        REQUEST_DECODE, VALIDATE, XDC_TRANSFORM, GET_DATA_TO_SIGN, TOKEN_SIGN, SIGN_DOCUMENT, RESPONSE_ENCODE;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public record Labels(String form, String container, String driver) {
+        public static final Labels NONE = new Labels(null, null, null);
+
+        public static Labels of(SigningParameters parameters, SigningKey key) {
+            var container = parameters.getContainer() != null ? parameters.getContainer().name() : null;
+            var form = parameters.getSignatureType() != null ? parameters.getSignatureType().name() : null;
+            return new Labels(form, container, key != null ? key.getDriverName() : null);
+        }
+    }
+
+    private static final double[] BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private static final Map<Key, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<Key, LongAdder> results = new ConcurrentHashMap<>();
+    private static final Map<Labels, LongAdder> tokenQueueDepths = new ConcurrentHashMap<>();
+    private static final Map<Key, LongAdder> pipelineStages = new ConcurrentHashMap<>();
+
+    private record Key(String name, Labels labels) {
+    }
+
+    private static class Histogram {
+        private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (var i = 0; i < counts.length; i++)
+                counts[i] = new LongAdder();
+        }
+
+        void observe(long nanos) {
+            var seconds = nanos / 1e9;
+            var i = 0;
+            while (i < BUCKETS.length && seconds > BUCKETS[i])
+                i++;
+
+            counts[i].increment();
+            sumNanos.add(nanos);
+        }
+    }
+
+    public static void record(Phase phase, Labels labels, long nanos) {
+        histograms.computeIfAbsent(new Key(phase.label(), labels), key -> new Histogram()).observe(nanos);
+    }
+
+    public static <T> T time(Phase phase, Labels labels, Supplier<T> action) {
+        var start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(phase, labels, System.nanoTime() - start);
+        }
+    }
+
+    public static void countResult(String result, Labels labels) {
+        results.computeIfAbsent(new Key(result, labels), key -> new LongAdder()).increment();
+    }
+
+    public static void countPipelineStage(String stage) {
+        pipelineStages.computeIfAbsent(new Key(stage, Labels.NONE), key -> new LongAdder()).increment();
+    }
+
+    public static void addTokenQueueDepth(Labels labels, long delta) {
+        tokenQueueDepths.computeIfAbsent(labels, key -> new LongAdder()).add(delta);
+    }
+
+    // Prometheus text exposition format 0.0.4
+    public static void writePrometheus(Writer writer) throws IOException {
+        writer.write("# HELP autogram_signing_phase_seconds Duration of signing phases.\n");
+        writer.write("# TYPE autogram_signing_phase_seconds histogram\n");
+        for (var entry : sorted(histograms)) {
+            var labels = formatLabels("phase", entry.getKey());
+            var histogram = entry.getValue();
+
+            long cumulative = 0;
+            for (var i = 0; i < histogram.counts.length; i++) {
+                cumulative += histogram.counts[i].sum();
+                var le = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+                writer.write("autogram_signing_phase_seconds_bucket{" + labels + ",le=\"" + le + "\"} " + cumulative + "\n");
+            }
+            writer.write("autogram_signing_phase_seconds_sum{" + labels + "} " + histogram.sumNanos.sum() / 1e9 + "\n");
+            writer.write("autogram_signing_phase_seconds_count{" + labels + "} " + cumulative + "\n");
+        }
+
+        writer.write("# HELP autogram_signing_jobs_total Finished signing jobs by result.\n");
+        writer.write("# TYPE autogram_signing_jobs_total counter\n");
+        for (var entry : sorted(results))
+            writer.write("autogram_signing_jobs_total{" + formatLabels("result", entry.getKey()) + "} " + entry.getValue().sum() + "\n");
+
+        writer.write("# HELP autogram_pipeline_jobs_total Jobs that passed a stage of the batch signing pipeline.\n");
+        writer.write("# TYPE autogram_pipeline_jobs_total counter\n");
+        for (var entry : sorted(pipelineStages))
+            writer.write("autogram_pipeline_jobs_total{" + formatLabels("stage", entry.getKey()) + "} " + entry.getValue().sum() + "\n");
+
+        writer.write("# HELP autogram_token_queue_depth Token operations waiting for the token.\n");
+        writer.write("# TYPE autogram_token_queue_depth gauge\n");
+        for (var entry : sorted(tokenQueueDepths))
+            writer.write("autogram_token_queue_depth{" + formatLabels(entry.getKey()) + "} " + entry.getValue().sum() + "\n");
+    }
+
+    private static <K, V> ArrayList<Map.Entry<K, V>> sorted(Map<K, V> map) {
+        var entries = new ArrayList<>(map.entrySet());
+        entries.sort(Comparator.comparing(entry -> entry.getKey().toString()));
+        return entries;
+    }
+
+    private static String formatLabels(String name, Key key) {
+        var labels = formatLabels(key.labels());
+        return name + "=\"" + key.name() + "\"" + (labels.isEmpty() ? "" : "," + labels);
+    }
+
+    private static String formatLabels(Labels labels) {
+        var builder = new StringBuilder();
+        appendLabel(builder, "form", labels.form());
+        appendLabel(builder, "container", labels.container());
+        appendLabel(builder, "driver", labels.driver());
+        return builder.length() > 0 ? builder.substring(1) : "";
+    }
+
+    private static void appendLabel(StringBuilder builder, String name, String value) {
+        if (value == null)
+            return;
+
+        var escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        builder.append(',').append(name).append("=\"").append(escaped).append('"');
+    }
+}
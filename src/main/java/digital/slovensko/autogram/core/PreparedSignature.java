@@ -0,0 +1,61 @@
+package digital.slovensko.autogram.core;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.SignatureAlgorithm;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.SignatureValue;
+import eu.europa.esig.dss.model.ToBeSigned;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+// State between SigningJob.prepareSignature and finalizeSignature. DSS has to get the very same signature parameters
+// in both calls, they carry the signing time, so they stay hidden in here.
+public class PreparedSignature {
+    private final SigningJob job;
+    private final ToBeSigned dataToSign;
+    private final DigestAlgorithm digestAlgorithm;
+    private final SignatureAlgorithm signatureAlgorithm;
+    private final CertificateToken certificate;
+    private final Function<SignatureValue, DSSDocument> signDocument;
+    private final AtomicBoolean isFinalized = new AtomicBoolean();
+
+    PreparedSignature(SigningJob job, ToBeSigned dataToSign, DigestAlgorithm digestAlgorithm,
+            SignatureAlgorithm signatureAlgorithm, CertificateToken certificate,
+            Function<SignatureValue, DSSDocument> signDocument) {
+        this.job = job;
+        this.dataToSign = dataToSign;
+        this.digestAlgorithm = digestAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.certificate = certificate;
+        this.signDocument = signDocument;
+    }
+
+    DSSDocument signDocument(SignatureValue signatureValue) {
+        if (isFinalized.getAndSet(true))
+            throw new IllegalStateException("Signature is already finalized");
+
+        return signDocument.apply(signatureValue);
+    }
+
+    public SigningJob getJob() {
+        return job;
+    }
+
+    public ToBeSigned getDataToSign() {
+        return dataToSign;
+    }
+
+    public DigestAlgorithm getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public SignatureAlgorithm getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public CertificateToken getCertificate() {
+        return certificate;
+    }
+}
@@ -0,0 +1,52 @@
+package digital.slovensko.autogram.core;
+
+import eu.europa.esig.dss.asic.cades.signature.ASiCWithCAdESService;
+import eu.europa.esig.dss.asic.xades.signature.ASiCWithXAdESService;
+import eu.europa.esig.dss.cades.signature.CAdESService;
+import eu.europa.esig.dss.pades.signature.PAdESService;
+import eu.europa.esig.dss.validation.CertificateVerifier;
+import eu.europa.esig.dss.validation.CommonCertificateVerifier;
+import eu.europa.esig.dss.xades.signature.XAdESService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// DSS services keep no per-document state, so one instance of each is shared by all jobs. They are created on first
+// use so that e.g. PDF support is not initialized until a PDF is signed.
+public class SignatureServices {
+    private final CertificateVerifier certificateVerifier;
+    private final Map<Class<?>, Object> services = new ConcurrentHashMap<>();
+
+    public SignatureServices() {
+        this(new CommonCertificateVerifier());
+    }
+
+    public SignatureServices(CertificateVerifier certificateVerifier) {
+        this.certificateVerifier = certificateVerifier;
+    }
+
+    public XAdESService getXAdESService() {
+        return get(XAdESService.class, XAdESService::new);
+    }
+
+    public CAdESService getCAdESService() {
+        return get(CAdESService.class, CAdESService::new);
+    }
+
+    public PAdESService getPAdESService() {
+        return get(PAdESService.class, PAdESService::new);
+    }
+
+    public ASiCWithXAdESService getASiCWithXAdESService() {
+        return get(ASiCWithXAdESService.class, ASiCWithXAdESService::new);
+    }
+
+    public ASiCWithCAdESService getASiCWithCAdESService() {
+        return get(ASiCWithCAdESService.class, ASiCWithCAdESService::new);
+    }
+
+    private <T> T get(Class<T> type, Function<CertificateVerifier, T> factory) {
+        return type.cast(services.computeIfAbsent(type, key -> factory.apply(certificateVerifier)));
+    }
+}
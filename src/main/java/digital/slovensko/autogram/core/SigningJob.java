@@ -1,28 +1,29 @@
 package digital.slovensko.autogram.core;
 
+import digital.slovensko.autogram.core.Metrics.Labels;
+import digital.slovensko.autogram.core.Metrics.Phase;
 import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.core.errors.VisualizationFailedException;
 import digital.slovensko.autogram.ui.SaveFileResponder;
-import eu.europa.esig.dss.asic.cades.signature.ASiCWithCAdESService;
-import eu.europa.esig.dss.asic.xades.signature.ASiCWithXAdESService;
-import eu.europa.esig.dss.cades.signature.CAdESService;
+import digital.slovensko.autogram.util.SpillingOutputStream;
+import eu.europa.esig.dss.AbstractSignatureParameters;
 import eu.europa.esig.dss.enumerations.MimeTypeEnum;
+import eu.europa.esig.dss.enumerations.SignatureForm;
 import eu.europa.esig.dss.model.CommonDocument;
 import eu.europa.esig.dss.model.DSSDocument;
 import eu.europa.esig.dss.model.FileDocument;
-import eu.europa.esig.dss.pades.signature.PAdESService;
-import eu.europa.esig.dss.validation.CommonCertificateVerifier;
-import eu.europa.esig.dss.xades.signature.XAdESService;
+import eu.europa.esig.dss.model.SignatureValue;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.signature.DocumentSignatureService;
 
-import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
@@ -33,6 +34,7 @@ public class SigningJob {
     private final Responder responder;
     private final CommonDocument document;
     private final SigningParameters parameters;
+    private DSSDocument preparedDocument;
 
     public SigningJob(CommonDocument document, SigningParameters parameters, Responder responder) {
         this.document = document;
@@ -87,44 +89,28 @@ public class SigningJob {
         }
     }
 
+    // The document is parsed as a stream straight into the tree of the XSLT processor, an XDC is unwrapped on the
+    // way by XMLDataFilter
     private String transform() {
         // TODO probably move this logic into signing job creation
-        try {
-            var builderFactory = DocumentBuilderFactory.newInstance();
-            builderFactory.setNamespaceAware(true);
-            var document = builderFactory.newDocumentBuilder().parse(new InputSource(this.document.openStream()));
-
-            var xmlSource = new DOMSource(document);
-            if (isXDC())
-                xmlSource = extractFromXDC(document, builderFactory);
-
-            var outputTarget = new StreamResult(new StringWriter());
-            var transformer = TransformerFactory.newInstance().newTransformer(
-                new StreamSource(new ByteArrayInputStream(parameters.getTransformation().getBytes())));
-            transformer.transform(xmlSource, outputTarget);
-
-            return outputTarget.getWriter().toString().trim();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null; // TODO
+        XMLDataFilter filter;
+        var output = new StringWriter();
+        try (var stream = this.document.openStream()) {
+            var parserFactory = SAXParserFactory.newInstance();
+            parserFactory.setNamespaceAware(true);
+            var reader = parserFactory.newSAXParser().getXMLReader();
+            filter = isXDC() ? new XMLDataFilter(reader) : null;
+
+            var transformer = parameters.getTransformationStylesheet().getTemplates().newTransformer();
+            transformer.transform(new SAXSource(filter != null ? filter : reader, new InputSource(stream)), new StreamResult(output));
+        } catch (IOException | SAXException | ParserConfigurationException | TransformerException e) {
+            throw new VisualizationFailedException(e);
         }
-    }
-
-    private DOMSource extractFromXDC(Document document, DocumentBuilderFactory builderFactory)
-        throws ParserConfigurationException {
-        var xdc = document.getDocumentElement();
-
-        var xmlData = xdc.getElementsByTagNameNS("http://data.gov.sk/def/container/xmldatacontainer+xml/1.1", "XMLData")
-            .item(0);
 
-        if (xmlData == null)
-            throw new RuntimeException("XMLData not found in XDC"); // TODO catch somewhere
+        if (filter != null && !filter.isXMLDataFound())
+            throw new VisualizationFailedException("Kontajner XML Datacontainer neobsahuje element XMLData s dokumentom.");
 
-        document = builderFactory.newDocumentBuilder().newDocument();
-        var node = document.importNode(xmlData.getFirstChild(), true);
-        document.appendChild(node);
-
-        return new DOMSource(document);
+        return output.toString().trim();
     }
 
     public String getDocumentAsHTML() {
@@ -139,100 +125,100 @@ public class SigningJob {
         }
     }
 
-    public void signWithKeyAndRespond(SigningKey key) {
-        boolean isContainer = getParameters().getContainer() != null;
-        var doc = switch (getParameters().getSignatureType()) {
-            case XAdES -> isContainer ? signDocumentAsAsiCWithXAdeS(key) : signDocumentAsXAdeS(key);
-            case CAdES -> isContainer ? signDocumentAsASiCWithCAdeS(key) : signDocumentAsCAdeS(key);
-            case PAdES -> signDocumentAsPAdeS(key);
-            default -> throw new RuntimeException("Unsupported signature type: " + getParameters().getSignatureType());
-        };
-        responder.onDocumentSigned(new SignedDocument(doc, key.getCertificate()));
-    }
-
-    public void onDocumentSignFailed(AutogramException e) {
-        responder.onDocumentSignFailed(e);
-    }
-
-    private DSSDocument signDocumentAsCAdeS(SigningKey key) {
-        var commonCertificateVerifier = new CommonCertificateVerifier();
-        var service = new CAdESService(commonCertificateVerifier);
-        var jobParameters = getParameters();
-        var signatureParameters = getParameters().getCAdESSignatureParameters();
-
-        signatureParameters.setSigningCertificate(key.getCertificate());
-        signatureParameters.setCertificateChain(key.getCertificateChain());
+    // Everything that does not depend on the signing certificate: the XDC wrap and the document digest, which DSS
+    // caches in the document. Autogram runs this while the user is still reading the document, signing reuses it.
+    public synchronized void prepareDocument() {
+        if (preparedDocument != null)
+            return;
 
-        var dataToSign = service.getDataToSign(getDocument(), signatureParameters);
-        var signatureValue = key.sign(dataToSign, jobParameters.getDigestAlgorithm());
-
-        return service.signDocument(getDocument(), signatureParameters, signatureValue);
-    }
-
-    private DSSDocument signDocumentAsAsiCWithXAdeS(SigningKey key) {
         DSSDocument doc = getDocument();
-        if (getParameters().shouldCreateDatacontainer() && !isXDC()) {
-            var transformer = XDCTransformer.buildFromSigningParameters(getParameters());
-            doc = transformer.transform(getDocument());
-            doc.setMimeType(AutogramMimeType.XML_DATACONTAINER);
+        var isAsicXades = getParameters().getSignatureType() == SignatureForm.XAdES && getParameters().getContainer() != null;
+        if (isAsicXades && getParameters().shouldCreateDatacontainer() && !isXDC()) {
+            // only jobs that are actually wrapped are timed, the rest would skew the histogram with no-ops
+            doc = Metrics.time(Phase.XDC_TRANSFORM, Labels.of(getParameters(), null), () -> {
+                var transformer = XDCTransformer.buildFromSigningParameters(getParameters());
+                var transformed = transformer.transform(getDocument());
+                transformed.setMimeType(AutogramMimeType.XML_DATACONTAINER);
+                return transformed;
+            });
         }
 
-        var commonCertificateVerifier = new CommonCertificateVerifier();
-        var service = new ASiCWithXAdESService(commonCertificateVerifier);
-        var signatureParameters = getParameters().getASiCWithXAdESSignatureParameters();
-
-        signatureParameters.setSigningCertificate(key.getCertificate());
-        signatureParameters.setCertificateChain(key.getCertificateChain());
+        // PAdES digests the signed byte range which only exists once the signature dictionary is in place
+        if (getParameters().getSignatureType() != SignatureForm.PAdES)
+            doc.getDigest(getParameters().getDigestAlgorithm());
 
-        var dataToSign = service.getDataToSign(doc, signatureParameters);
-        var signatureValue = key.sign(dataToSign, getParameters().getDigestAlgorithm());
+        preparedDocument = doc;
+    }
 
-        return service.signDocument(doc, signatureParameters, signatureValue);
+    private synchronized DSSDocument getPreparedDocument() {
+        prepareDocument();
+        return preparedDocument;
     }
 
-    private DSSDocument signDocumentAsXAdeS(SigningKey key) {
-        var commonCertificateVerifier = new CommonCertificateVerifier();
-        var service = new XAdESService(commonCertificateVerifier);
-        var jobParameters = getParameters();
-        var signatureParameters = getParameters().getXAdESSignatureParameters();
+    // First phase of signing, everything up to the token operation. The returned state has to be passed to
+    // finalizeSignature together with the signature of its data to sign.
+    public PreparedSignature prepareSignature(CertificateToken certificate, CertificateToken[] certificateChain,
+            SignatureServices services) {
+        boolean isContainer = getParameters().getContainer() != null;
+        return switch (getParameters().getSignatureType()) {
+            case XAdES -> isContainer
+                ? prepareSignature(services.getASiCWithXAdESService(), getParameters().getASiCWithXAdESSignatureParameters(), certificate, certificateChain)
+                : prepareSignature(services.getXAdESService(), getParameters().getXAdESSignatureParameters(), certificate, certificateChain);
+            case CAdES -> isContainer
+                ? prepareSignature(services.getASiCWithCAdESService(), getParameters().getASiCWithCAdESSignatureParameters(), certificate, certificateChain)
+                : prepareSignature(services.getCAdESService(), getParameters().getCAdESSignatureParameters(), certificate, certificateChain);
+            case PAdES -> prepareSignature(services.getPAdESService(), getParameters().getPAdESSignatureParameters(), certificate, certificateChain);
+            default -> throw new RuntimeException("Unsupported signature type: " + getParameters().getSignatureType());
+        };
+    }
 
-        signatureParameters.setSigningCertificate(key.getCertificate());
-        signatureParameters.setCertificateChain(key.getCertificateChain());
+    private <P extends AbstractSignatureParameters<?>> PreparedSignature prepareSignature(
+            DocumentSignatureService<P, ?> service, P signatureParameters, CertificateToken certificate,
+            CertificateToken[] certificateChain) {
+        signatureParameters.setSigningCertificate(certificate);
+        signatureParameters.setCertificateChain(certificateChain);
 
-        var dataToSign = service.getDataToSign(getDocument(), signatureParameters);
-        var signatureValue = key.sign(dataToSign, jobParameters.getDigestAlgorithm());
+        var doc = getPreparedDocument();
+        var labels = Labels.of(getParameters(), null);
+        var dataToSign = Metrics.time(Phase.GET_DATA_TO_SIGN, labels, () -> service.getDataToSign(doc, signatureParameters));
 
-        return service.signDocument(getDocument(), signatureParameters, signatureValue);
+        return new PreparedSignature(this, dataToSign, getParameters().getDigestAlgorithm(),
+            signatureParameters.getSignatureAlgorithm(), certificate, signatureValue
+            -> Metrics.time(Phase.SIGN_DOCUMENT, labels, () -> service.signDocument(doc, signatureParameters, signatureValue)));
     }
 
-    private DSSDocument signDocumentAsASiCWithCAdeS(SigningKey key) {
-        var commonCertificateVerifier = new CommonCertificateVerifier();
-        var service = new ASiCWithCAdESService(commonCertificateVerifier);
-        var jobParameters = getParameters();
-        var signatureParameters = getParameters().getASiCWithCAdESSignatureParameters();
-
-        signatureParameters.setSigningCertificate(key.getCertificate());
-        signatureParameters.setCertificateChain(key.getCertificateChain());
+    // Second phase, builds the signed document. Each prepared signature can be finalized once.
+    public SignedDocument finalizeSignature(PreparedSignature prepared, SignatureValue signatureValue) {
+        if (prepared.getJob() != this)
+            throw new IllegalArgumentException("Signature was prepared for another job");
 
-        var dataToSign = service.getDataToSign(getDocument(), signatureParameters);
-        var signatureValue = key.sign(dataToSign, jobParameters.getDigestAlgorithm());
+        return new SignedDocument(prepared.signDocument(signatureValue), prepared.getCertificate());
+    }
 
-        return service.signDocument(getDocument(), signatureParameters, signatureValue);
+    public void signWithKeyAndRespond(SigningKey key, SignatureServices services) {
+        var prepared = prepareSignature(key.getCertificate(), key.getCertificateChain(), services);
+        var signatureValue = key.sign(prepared.getDataToSign(), prepared.getDigestAlgorithm());
+        onDocumentSigned(finalizeSignature(prepared, signatureValue), key);
     }
 
-    private DSSDocument signDocumentAsPAdeS(SigningKey key) {
-        var commonCertificateVerifier = new CommonCertificateVerifier();
-        var service = new PAdESService(commonCertificateVerifier);
-        var jobParameters = getParameters();
-        var signatureParameters = getParameters().getPAdESSignatureParameters();
+    public void onDocumentSigned(SignedDocument signedDocument, SigningKey key) {
+        Metrics.countResult("signed", Labels.of(parameters, key));
+        discardPreparedDocument();
+        responder.onDocumentSigned(signedDocument);
+    }
 
-        signatureParameters.setSigningCertificate(key.getCertificate());
-        signatureParameters.setCertificateChain(key.getCertificateChain());
+    public void onDocumentSignFailed(AutogramException e) {
+        Metrics.countResult("failed", Labels.of(parameters, null));
+        discardPreparedDocument();
+        responder.onDocumentSignFailed(e);
+    }
 
-        var dataToSign = service.getDataToSign(getDocument(), signatureParameters);
-        var signatureValue = key.sign(dataToSign, jobParameters.getDigestAlgorithm());
+    // a large streamed XDC is kept in a temporary file until the job is done
+    private synchronized void discardPreparedDocument() {
+        if (preparedDocument != null && preparedDocument != document)
+            SpillingOutputStream.discard(preparedDocument);
 
-        return service.signDocument(getDocument(), signatureParameters, signatureValue);
+        preparedDocument = null;
     }
 
     public static SigningJob buildFromFile(File file, Autogram autogram) {
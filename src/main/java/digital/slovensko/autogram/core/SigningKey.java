@@ -1,28 +1,176 @@
 package digital.slovensko.autogram.core;
 
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
 import javax.naming.ldap.Rdn;
 
+import digital.slovensko.autogram.core.errors.TokenRemovedException;
 import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.SignatureAlgorithm;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.Digest;
 import eu.europa.esig.dss.model.SignatureValue;
 import eu.europa.esig.dss.model.ToBeSigned;
 import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.DSSUtils;
 import eu.europa.esig.dss.token.AbstractKeyStoreTokenConnection;
 import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
 
 public class SigningKey {
-    final AbstractKeyStoreTokenConnection token;
+    public interface BulkSigningListener {
+        void onSigned(int index, SignatureValue signatureValue);
+
+        void onFailed(int index, RuntimeException error);
+
+        default void onProgress(int done, int total) {
+        }
+    }
+
     final DSSPrivateKeyEntry privateKey;
+    private final TokenSession session;
+    private final AbstractKeyStoreTokenConnection token;
+    private final String driverName;
+    private final TokenExecutor executor;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean signsDigest;
 
     public SigningKey(AbstractKeyStoreTokenConnection token, DSSPrivateKeyEntry privateKey) {
-        this.token = token;
+        this(token, privateKey, null, false);
+    }
+
+    public SigningKey(AbstractKeyStoreTokenConnection token, DSSPrivateKeyEntry privateKey, String driverName,
+            boolean signsDigest) {
+        this(new TokenSession(token, driverName, signsDigest), privateKey);
+    }
+
+    public SigningKey(TokenSession session, DSSPrivateKeyEntry privateKey) {
+        this.session = session;
+        this.token = session.getToken();
         this.privateKey = privateKey;
+        this.driverName = session.getDriverName();
+        this.signsDigest = session.signsDigest();
+        this.executor = session.getExecutor();
+        session.acquire();
+    }
+
+    // tokens do not handle concurrent operations, all jobs signing with keys of the same token
+    // queue up on the executor of its session
+    public CompletableFuture<SignatureValue> signAsync(ToBeSigned dataToSign, DigestAlgorithm algo) {
+        var signatureAlgorithm = SignatureAlgorithm.getAlgorithm(privateKey.getEncryptionAlgorithm(), algo);
+        return submit(()
+            -> Metrics.time(Metrics.Phase.TOKEN_SIGN, new Metrics.Labels(null, null, driverName), ()
+            -> signOnToken(dataToSign, signatureAlgorithm)));
     }
 
     public SignatureValue sign(ToBeSigned dataToSign, DigestAlgorithm algo) {
-        return token.sign(dataToSign, algo, privateKey);
+        return TokenExecutor.await(signAsync(dataToSign, algo));
+    }
+
+    // Signs everything in one go on the token thread, nothing else gets to the token in between. The signature
+    // algorithm is resolved once for all items. A failed item is reported and the rest continue, cancelling the
+    // returned future stops before the next item.
+    public CompletableFuture<Void> signAll(List<ToBeSigned> dataToSign, DigestAlgorithm algo,
+            BulkSigningListener listener) {
+        var result = new CompletableFuture<Void>();
+        var items = List.copyOf(dataToSign);
+        var labels = new Metrics.Labels(null, null, driverName);
+
+        submit(() -> {
+            try {
+                var signatureAlgorithm = SignatureAlgorithm.getAlgorithm(privateKey.getEncryptionAlgorithm(), algo);
+                for (var i = 0; i < items.size() && !result.isDone(); i++) {
+                    var item = items.get(i);
+                    SignatureValue signatureValue;
+                    try {
+                        signatureValue = Metrics.time(Metrics.Phase.TOKEN_SIGN, labels, ()
+                            -> signOnToken(item, signatureAlgorithm));
+                    } catch (RuntimeException e) {
+                        listener.onFailed(i, e);
+                        listener.onProgress(i + 1, items.size());
+                        continue;
+                    }
+
+                    // outside of the catch above, a failing listener must not report the item twice
+                    listener.onSigned(i, signatureValue);
+                    listener.onProgress(i + 1, items.size());
+                }
+                result.complete(null);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error instanceof RejectedExecutionException)
+                result.completeExceptionally(new TokenRemovedException());
+            else if (error != null)
+                result.completeExceptionally(error);
+        });
+
+        return result;
+    }
+
+    // The session is closed when its token was removed or failed to log in again, its executor takes no more calls
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        if (session.isClosed())
+            return CompletableFuture.failedFuture(new TokenRemovedException());
+
+        return executor.submit(call);
+    }
+
+    // Only the digest crosses the card interface when the driver allows it. Modules without the raw mechanisms
+    // (CKM_RSA_PKCS, CKM_ECDSA) reject it, the key then sends the whole data from then on. Other errors are not
+    // retried, for some cards every attempt means another PIN prompt.
+    private SignatureValue signOnToken(ToBeSigned dataToSign, SignatureAlgorithm signatureAlgorithm) {
+        try {
+            return signOnTokenWith(dataToSign, signatureAlgorithm);
+        } catch (DSSException e) {
+            session.onTokenFailed(e);
+            throw e;
+        }
+    }
+
+    private SignatureValue signOnTokenWith(ToBeSigned dataToSign, SignatureAlgorithm signatureAlgorithm) {
+        if (signsDigest) {
+            try {
+                var digestAlgorithm = signatureAlgorithm.getDigestAlgorithm();
+                var digest = new Digest(digestAlgorithm, DSSUtils.digest(digestAlgorithm, dataToSign.getBytes()));
+                return token.signDigest(digest, signatureAlgorithm, privateKey);
+            } catch (DSSException e) {
+                if (!isMechanismRejected(e))
+                    throw e;
+
+                signsDigest = false;
+            }
+        }
+
+        return token.sign(dataToSign, signatureAlgorithm, privateKey);
+    }
+
+    private static boolean isMechanismRejected(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NoSuchAlgorithmException)
+                return true;
+
+            if (cause.getMessage() != null && cause.getMessage().contains("CKR_MECHANISM"))
+                return true;
+        }
+
+        return false;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    public String getDriverName() {
+        return driverName;
     }
 
     public CertificateToken getCertificate() {
@@ -43,7 +191,14 @@ public class SigningKey {
         return privateKey.getCertificateChain();
     }
 
+    // Also once the session is closed, the key can not sign anymore and a new one has to be picked
+    public boolean isClosed() {
+        return closed.get() || session.isClosed();
+    }
+
+    // The token stays open while its session is pooled, see TokenSessionPool
     public void close() {
-        token.close();
+        if (closed.compareAndSet(false, true))
+            session.release();
     }
 }
@@ -1,15 +1,8 @@
 package digital.slovensko.autogram.core;
 
-import java.io.IOException;
-import java.io.StringReader;
-
 import javax.xml.crypto.dsig.CanonicalizationMethod;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import eu.europa.esig.dss.enumerations.*;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 import eu.europa.esig.dss.asic.cades.ASiCWithCAdESSignatureParameters;
 import eu.europa.esig.dss.asic.xades.ASiCWithXAdESSignatureParameters;
@@ -31,6 +24,7 @@ public class SigningParameters {
     private final String keyInfoCanonicalization;
     private final String identifier;
     private final boolean checkPDFACompliance;
+    private volatile StylesheetCache.Stylesheet stylesheet;
 
     public SigningParameters(SignatureLevel level, ASiCContainerType container,
                              String containerXmlns, SignaturePackaging packaging,
@@ -55,35 +49,30 @@ public class SigningParameters {
     }
 
     public MimeType getTransformationOutputMimeType() {
-        if (transformation == null)
+        var stylesheet = getTransformationStylesheet();
+        if (stylesheet == null || stylesheet.getOutputMethod() == null)
             return null;
 
-        try {
-            var builderFactory = DocumentBuilderFactory.newInstance();
-            builderFactory.setNamespaceAware(true);
-            var document = builderFactory.newDocumentBuilder().parse(new InputSource(new StringReader(transformation)));
-            var elem = document.getDocumentElement();
-            var outputElements = elem.getElementsByTagNameNS("http://www.w3.org/1999/XSL/Transform", "output");
-            var method = outputElements.item(0).getAttributes().getNamedItem("method").getNodeValue();
-
-            if (method.equals("html"))
-                return MimeTypeEnum.HTML;
+        var method = stylesheet.getOutputMethod();
+        if (method.equals("html"))
+            return MimeTypeEnum.HTML;
 
-            if (method.equals("text"))
-                return MimeTypeEnum.TEXT;
+        if (method.equals("text"))
+            return MimeTypeEnum.TEXT;
 
-                throw new RuntimeException("Unsupported transformation output method: " + method);
+        throw new RuntimeException("Unsupported transformation output method: " + method);
+    }
 
-        } catch (IOException | ParserConfigurationException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        } catch (SAXException e) {
-            // TODO log error in more JAVA way
-            System.out.println("Error parsing transformation");
+    // Looked up once, the stylesheet itself is shared with other jobs, see StylesheetCache
+    StylesheetCache.Stylesheet getTransformationStylesheet() {
+        if (transformation == null)
             return null;
-        }
 
-        return MimeTypeEnum.TEXT;
+        var cached = stylesheet;
+        if (cached == null)
+            stylesheet = cached = StylesheetCache.get(transformation);
+
+        return cached;
     }
 
     public ASiCWithXAdESSignatureParameters getASiCWithXAdESSignatureParameters() {
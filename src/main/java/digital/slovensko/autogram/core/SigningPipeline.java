@@ -0,0 +1,228 @@
+package digital.slovensko.autogram.core;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.core.errors.UnrecognizedException;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.SignatureValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static digital.slovensko.autogram.core.Configuration.getProperty;
+
+// Signs many jobs with one key in three stages. Jobs are prepared (XDC transform, getDataToSign) in parallel, queue
+// up for the token, and are assembled (signDocument) in parallel again. Whatever is prepared while the token is busy
+// goes to it in one SigningKey.signAll call, so a slow card is not handed to other callers between the documents of
+// a batch. At most queueLimit jobs are prepared ahead of the token so a large batch does not keep every prepared
+// document in memory.
+public class SigningPipeline {
+    public enum Stage {
+        PREPARE, TOKEN, ASSEMBLE;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final SignatureServices services;
+    private final int queueLimit;
+
+    public SigningPipeline(ForkJoinPool pool, SignatureServices services, int queueLimit) {
+        this.pool = pool;
+        this.services = services;
+        this.queueLimit = queueLimit;
+    }
+
+    public static SigningPipeline buildFromConfiguration(SignatureServices services) {
+        return new SigningPipeline(new ForkJoinPool(Runtime.getRuntime().availableProcessors()), services,
+            Math.max(1, Integer.parseInt(getProperty("pipeline.queueLimit"))));
+    }
+
+    // Every job reports to its own responder as soon as it is done, the returned future completes with the errors
+    // of the failed jobs once all of them are done
+    public CompletableFuture<List<AutogramException>> sign(List<SigningJob> jobs, SigningKey key) {
+        return new Run(jobs, key).start();
+    }
+
+    private class Run {
+        private final Iterator<SigningJob> pending;
+        private final SigningKey key;
+        private final List<AutogramException> errors = Collections.synchronizedList(new ArrayList<>());
+        private final CompletableFuture<List<AutogramException>> done = new CompletableFuture<>();
+        private final List<Prepared> readyForToken = new ArrayList<>();
+        private int remaining;
+        private int waitingForToken = 0;
+        private boolean isTokenBusy;
+
+        Run(List<SigningJob> jobs, SigningKey key) {
+            this.pending = List.copyOf(jobs).iterator();
+            this.key = key;
+            this.remaining = jobs.size();
+        }
+
+        CompletableFuture<List<AutogramException>> start() {
+            if (remaining == 0)
+                done.complete(List.of());
+            else
+                feed();
+
+            return done;
+        }
+
+        private void feed() {
+            var next = new ArrayList<SigningJob>();
+            synchronized (this) {
+                while (waitingForToken < queueLimit && pending.hasNext()) {
+                    waitingForToken++;
+                    next.add(pending.next());
+                }
+            }
+
+            next.forEach(this::process);
+        }
+
+        private void process(SigningJob job) {
+            CompletableFuture.supplyAsync(() -> stage(Stage.PREPARE, ()
+                -> job.prepareSignature(key.getCertificate(), key.getCertificateChain(), services)), pool)
+                .whenComplete((preparedSignature, error) -> {
+                    if (error != null) {
+                        fail(job, error);
+                        onTokenDone(1);
+                        return;
+                    }
+
+                    synchronized (this) {
+                        readyForToken.add(new Prepared(job, preparedSignature));
+                    }
+                    signReady();
+                });
+        }
+
+        // One call takes all ready jobs with the same digest algorithm, the others wait for the next one
+        private void signReady() {
+            var items = new ArrayList<Prepared>();
+            synchronized (this) {
+                if (isTokenBusy || readyForToken.isEmpty())
+                    return;
+
+                var digestAlgorithm = readyForToken.get(0).signature().getDigestAlgorithm();
+                for (var iterator = readyForToken.iterator(); iterator.hasNext(); ) {
+                    var prepared = iterator.next();
+                    if (prepared.signature().getDigestAlgorithm() == digestAlgorithm) {
+                        items.add(prepared);
+                        iterator.remove();
+                    }
+                }
+                isTokenBusy = true;
+            }
+
+            var dataToSign = items.stream().map(prepared -> prepared.signature().getDataToSign()).toList();
+            var isReported = new boolean[items.size()];
+            key.signAll(dataToSign, items.get(0).signature().getDigestAlgorithm(), new SigningKey.BulkSigningListener() {
+                @Override
+                public void onSigned(int index, SignatureValue signatureValue) {
+                    isReported[index] = true;
+                    Metrics.countPipelineStage(Stage.TOKEN.label());
+                    assemble(items.get(index), signatureValue);
+                }
+
+                @Override
+                public void onFailed(int index, RuntimeException error) {
+                    isReported[index] = true;
+                    fail(items.get(index).job(), error);
+                }
+            }).whenComplete((ignored, error) -> {
+                // items the token never got to, when the session was closed under the call
+                for (var i = 0; i < items.size(); i++)
+                    if (!isReported[i])
+                        fail(items.get(i).job(), error != null ? error : new CancellationException());
+
+                synchronized (this) {
+                    isTokenBusy = false;
+                }
+                onTokenDone(items.size());
+                signReady();
+            });
+        }
+
+        private void assemble(Prepared prepared, SignatureValue signatureValue) {
+            CompletableFuture.supplyAsync(() -> stage(Stage.ASSEMBLE, ()
+                -> prepared.job().finalizeSignature(prepared.signature(), signatureValue)), pool)
+                .whenComplete((signedDocument, error) -> {
+                    if (error == null) {
+                        try {
+                            prepared.job().onDocumentSigned(signedDocument, key);
+                        } catch (RuntimeException e) {
+                            // a failing responder must not stop the other jobs
+                        }
+                        onJobDone();
+                    } else {
+                        fail(prepared.job(), error);
+                    }
+                });
+        }
+
+        private void onTokenDone(int count) {
+            synchronized (this) {
+                waitingForToken -= count;
+            }
+            feed();
+        }
+
+        private void fail(SigningJob job, Throwable error) {
+            onFailed(job, error);
+            onJobDone();
+        }
+
+        private void onFailed(SigningJob job, Throwable error) {
+            var exception = toAutogramException(error);
+            errors.add(exception);
+            try {
+                job.onDocumentSignFailed(exception);
+            } catch (RuntimeException e) {
+                // a failing responder must not stop the other jobs
+            }
+        }
+
+        private void onJobDone() {
+            boolean isLast;
+            synchronized (this) {
+                isLast = --remaining == 0;
+            }
+
+            if (isLast)
+                done.complete(List.copyOf(errors));
+        }
+    }
+
+    private record Prepared(SigningJob job, PreparedSignature signature) {
+    }
+
+    private static <T> T stage(Stage stage, Supplier<T> action) {
+        var result = action.get();
+        Metrics.countPipelineStage(stage.label());
+        return result;
+    }
+
+    private static AutogramException toAutogramException(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null)
+            error = error.getCause();
+
+        if (error instanceof AutogramException autogramException)
+            return autogramException;
+
+        if (error instanceof DSSException dssException)
+            return AutogramException.createFromDSSException(dssException);
+
+        return new UnrecognizedException(error instanceof Exception exception ? exception : new RuntimeException(error));
+    }
+}
@@ -0,0 +1,135 @@
+package digital.slovensko.autogram.core;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import net.sf.saxon.TransformerFactoryImpl;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+// Process wide cache of stylesheets keyed by their hash. Requests for the same form usually carry the same
+// stylesheet, so its output method and compiled templates are worked out once and shared by all jobs. The least
+// recently used stylesheet is dropped when the cache is full.
+public class StylesheetCache {
+    private static final int MAX_SIZE = Integer.parseInt(Configuration.getProperty("transformation.cache.maxSize"));
+
+    // Saxon compiles with a new compiler on every call, one factory serves all threads
+    private static final TransformerFactory transformerFactory = new TransformerFactoryImpl();
+
+    private static final Map<String, Stylesheet> stylesheets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Stylesheet> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    public static class Stylesheet {
+        private final String hash;
+        private final String source;
+        private final String outputMethod;
+        private final SAXException parseError;
+        private volatile Templates templates;
+
+        private Stylesheet(String hash, String source) {
+            this.hash = hash;
+            this.source = source;
+
+            // kept for every job bringing the same stylesheet, not just the first one
+            String method = null;
+            SAXException error = null;
+            try {
+                method = parseOutputMethod(source);
+            } catch (SAXException e) {
+                error = e;
+            }
+            this.outputMethod = method;
+            this.parseError = error;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        // method of xsl:output, null when the stylesheet has no output element
+        public String getOutputMethod() {
+            if (parseError != null)
+                throw new IllegalArgumentException("Unable to parse transformation: " + parseError.getMessage(),
+                        parseError);
+
+            return outputMethod;
+        }
+
+        // Templates are thread safe, every transformation gets its own Transformer from them. Compiled by Saxon and
+        // not by whatever JAXP factory the runtime picks
+        public Templates getTemplates() throws TransformerConfigurationException {
+            var compiled = templates;
+            if (compiled != null)
+                return compiled;
+
+            synchronized (this) {
+                if (templates == null)
+                    templates = transformerFactory.newTemplates(new StreamSource(new StringReader(source)));
+
+                return templates;
+            }
+        }
+
+        private static String parseOutputMethod(String source) throws SAXException {
+            try {
+                var builderFactory = DocumentBuilderFactory.newInstance();
+                builderFactory.setNamespaceAware(true);
+                var builder = builderFactory.newDocumentBuilder();
+                // the default handler prints parse errors to stderr, the error reaches the caller instead
+                builder.setErrorHandler(new DefaultHandler());
+                var document = builder.parse(new InputSource(new StringReader(source)));
+                var outputElements = document.getDocumentElement().getElementsByTagNameNS("http://www.w3.org/1999/XSL/Transform", "output");
+                if (outputElements.getLength() == 0)
+                    return null;
+
+                var method = outputElements.item(0).getAttributes().getNamedItem("method");
+                return method != null ? method.getNodeValue() : null;
+            } catch (IOException | ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public static Stylesheet get(String source) {
+        var hash = hash(source);
+        synchronized (stylesheets) {
+            var stylesheet = stylesheets.get(hash);
+            if (stylesheet != null)
+                return stylesheet;
+        }
+
+        // parsed outside of the lock, two jobs bringing the same new stylesheet at once both parse it
+        var stylesheet = new Stylesheet(hash, source);
+        synchronized (stylesheets) {
+            var existing = stylesheets.putIfAbsent(hash, stylesheet);
+            return existing != null ? existing : stylesheet;
+        }
+    }
+
+    private static String hash(String source) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package digital.slovensko.autogram.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// PKCS#11 libraries do not cope with concurrent calls, so every call to a token goes through its own single thread
+// in the order the calls were submitted. Callers get a future instead of blocking in a thread of their own.
+// A call cancelled while still queued is skipped, a call already running on the token cannot be interrupted.
+public class TokenExecutor {
+    private final ExecutorService executor;
+    private final Metrics.Labels labels;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    public TokenExecutor(String driverName) {
+        this.labels = new Metrics.Labels(null, null, driverName);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "autogram-token-" + (driverName != null ? driverName : "unknown"));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        var result = new CompletableFuture<T>();
+        queueDepth.incrementAndGet();
+        Metrics.addTokenQueueDepth(labels, 1);
+
+        try {
+            executor.execute(() -> {
+                queueDepth.decrementAndGet();
+                Metrics.addTokenQueueDepth(labels, -1);
+                if (result.isDone())
+                    return;
+
+                try {
+                    result.complete(call.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            queueDepth.decrementAndGet();
+            Metrics.addTokenQueueDepth(labels, -1);
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    // Runs last after everything already queued, then the thread ends. Calls submitted afterwards are rejected.
+    public CompletableFuture<Void> shutdown(Runnable last) {
+        var result = submit(() -> {
+            last.run();
+            return (Void) null;
+        });
+        executor.shutdown();
+        return result;
+    }
+
+    // Waits for the call and rethrows its exception as is, so callers keep catching DSSException and friends
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException | CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+
+            if (e.getCause() instanceof Error error)
+                throw error;
+
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new RuntimeException(e);
+        }
+    }
+}
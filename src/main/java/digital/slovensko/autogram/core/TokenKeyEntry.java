@@ -0,0 +1,40 @@
+package digital.slovensko.autogram.core;
+
+import eu.europa.esig.dss.enumerations.EncryptionAlgorithm;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+
+// A key together with the token session it was listed from, so keys of several drivers can be offered in one list
+public class TokenKeyEntry implements DSSPrivateKeyEntry {
+    private final TokenSession session;
+    private final DSSPrivateKeyEntry entry;
+
+    public TokenKeyEntry(TokenSession session, DSSPrivateKeyEntry entry) {
+        this.session = session;
+        this.entry = entry;
+    }
+
+    public String getDriverName() {
+        return session.getDriverName();
+    }
+
+    // tokens sign only with their own entries, not with this wrapper
+    public SigningKey createSigningKey() {
+        return new SigningKey(session, entry);
+    }
+
+    @Override
+    public CertificateToken getCertificate() {
+        return entry.getCertificate();
+    }
+
+    @Override
+    public CertificateToken[] getCertificateChain() {
+        return entry.getCertificateChain();
+    }
+
+    @Override
+    public EncryptionAlgorithm getEncryptionAlgorithm() {
+        return entry.getEncryptionAlgorithm();
+    }
+}
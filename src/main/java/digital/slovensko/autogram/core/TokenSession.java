@@ -0,0 +1,112 @@
+package digital.slovensko.autogram.core;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.core.errors.TokenRemovedException;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.token.AbstractKeyStoreTokenConnection;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+
+// An open token shared by all keys picked from it. Calls to the token go through the session executor, so keys
+// from the same token queue up behind each other. A session outside of a pool closes when its last key is closed.
+public class TokenSession {
+    private final AbstractKeyStoreTokenConnection token;
+    private final String driverName;
+    private final boolean signsDigest;
+    private final TokenSessionPool pool;
+    private final TokenExecutor executor;
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile List<DSSPrivateKeyEntry> keys;
+    private volatile long lastUsed = System.nanoTime();
+    private volatile boolean closed;
+    private CompletableFuture<Void> closing;
+
+    public TokenSession(AbstractKeyStoreTokenConnection token, String driverName, boolean signsDigest) {
+        this(token, driverName, signsDigest, null);
+    }
+
+    TokenSession(AbstractKeyStoreTokenConnection token, String driverName, boolean signsDigest, TokenSessionPool pool) {
+        this.token = token;
+        this.driverName = driverName;
+        this.signsDigest = signsDigest;
+        this.pool = pool;
+        this.executor = new TokenExecutor(driverName);
+    }
+
+    // Loaded once, reading the keystore means logging in and walking all certificates on the card
+    public List<DSSPrivateKeyEntry> getKeys() {
+        var loaded = keys;
+        if (loaded != null)
+            return loaded;
+
+        synchronized (this) {
+            if (keys == null)
+                keys = List.copyOf(TokenExecutor.await(executor.submit(token::getKeys)));
+
+            return keys;
+        }
+    }
+
+    AbstractKeyStoreTokenConnection getToken() {
+        return token;
+    }
+
+    TokenExecutor getExecutor() {
+        return executor;
+    }
+
+    public String getDriverName() {
+        return driverName;
+    }
+
+    public boolean signsDigest() {
+        return signsDigest;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    void acquire() {
+        users.incrementAndGet();
+        touch();
+    }
+
+    void release() {
+        touch();
+        if (users.decrementAndGet() == 0 && pool == null)
+            close();
+    }
+
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    boolean isIdleFor(long nanos) {
+        return users.get() == 0 && System.nanoTime() - lastUsed >= nanos;
+    }
+
+    // A removed card does not come back under the same session, the next pick opens a new one
+    void onTokenFailed(DSSException e) {
+        if (!(AutogramException.createFromDSSException(e) instanceof TokenRemovedException))
+            return;
+
+        if (pool != null)
+            pool.invalidate(this);
+        else
+            close();
+    }
+
+    // Runs after the calls already queued on the token, the result completes once the token is closed
+    synchronized CompletableFuture<Void> close() {
+        if (!closed) {
+            closed = true;
+            closing = executor.shutdown(token::close);
+        }
+
+        return closing;
+    }
+}
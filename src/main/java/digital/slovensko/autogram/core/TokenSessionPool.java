@@ -0,0 +1,106 @@
+package digital.slovensko.autogram.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import digital.slovensko.autogram.drivers.TokenDriver;
+
+// Keeps tokens open between signings. Loading a PKCS#11 module, logging in and reading the keystore takes seconds
+// with some cards, so the next key picked from the same driver reuses the open session. A session is closed once
+// no key uses it for the idle timeout, or right away when the token is removed.
+public class TokenSessionPool {
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    private final Map<TokenDriver, TokenSession> sessions = new ConcurrentHashMap<>();
+    private final Map<TokenDriver, Object> openingLocks = new ConcurrentHashMap<>();
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService reaper;
+
+    public TokenSessionPool(Duration idleTimeout) {
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "autogram-token-sessions");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        var period = Math.max(1000, idleTimeout.toMillis() / 4);
+        reaper.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static TokenSessionPool buildFromConfiguration() {
+        var seconds = Long.parseLong(Configuration.getProperty("token.session.idleTimeoutSeconds"));
+        return new TokenSessionPool(Duration.ofSeconds(seconds));
+    }
+
+    // An open session is already logged in, no need to ask for the password again
+    public boolean hasSession(TokenDriver driver) {
+        var session = sessions.get(driver);
+        return session != null && !session.isClosed();
+    }
+
+    // The password is only used when there is no open session for the driver. Opening a token takes seconds, so it
+    // holds only the lock of its driver, callers for other drivers and the reaper go on meanwhile.
+    public TokenSession getSession(TokenDriver driver, char[] password) {
+        synchronized (openingLocks.computeIfAbsent(driver, key -> new Object())) {
+            var session = sessions.get(driver);
+            if (session != null && !session.isClosed()) {
+                session.touch();
+                return session;
+            }
+
+            session = new TokenSession(driver.createTokenWithPassword(password), driver.getName(),
+                    driver.signsDigest(), this);
+            sessions.put(driver, session);
+            return session;
+        }
+    }
+
+    public void invalidate(TokenDriver driver) {
+        var session = sessions.remove(driver);
+        if (session != null)
+            session.close();
+    }
+
+    void invalidate(TokenSession session) {
+        sessions.values().remove(session);
+        session.close();
+    }
+
+    private void closeIdle() {
+        for (var entry : sessions.entrySet()) {
+            var session = entry.getValue();
+            if (session.isIdleFor(idleTimeoutNanos) && sessions.remove(entry.getKey(), session))
+                session.close();
+        }
+    }
+
+    // On exit, waits a while for the tokens to finish the calls in progress and close, so the modules log out
+    public void closeAll() {
+        reaper.shutdown();
+
+        var closing = new ArrayList<CompletableFuture<Void>>();
+        for (var driver : sessions.keySet()) {
+            var session = sessions.remove(driver);
+            if (session != null)
+                closing.add(session.close());
+        }
+
+        try {
+            var all = CompletableFuture.allOf(closing.toArray(CompletableFuture[]::new));
+            all.get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // nothing left to do about a token that fails to close on exit
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,35 +1,62 @@
 package digital.slovensko.autogram.core;
 
+import digital.slovensko.autogram.util.SpillingOutputStream;
 import eu.europa.esig.dss.enumerations.DigestAlgorithm;
 import eu.europa.esig.dss.enumerations.MimeTypeEnum;
+import eu.europa.esig.dss.model.CommonDocument;
 import eu.europa.esig.dss.model.DSSDocument;
 import eu.europa.esig.dss.model.InMemoryDocument;
 import eu.europa.esig.dss.spi.DSSUtils;
 import eu.europa.esig.dss.xades.DSSXMLUtils;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class XDCTransformer {
     public enum DestinationMediaType {
         TXT, HTML, XHTML
     }
 
+    private static final boolean STREAMING = Boolean.parseBoolean(Configuration.getProperty("xdc.streaming.enabled"));
+
+    private static final int DIGEST_CACHE_SIZE = Integer.parseInt(Configuration.getProperty("xdc.digestCache.maxSize"));
+
+    // Schema and transformation digests by a hash of the schema, the canonicalization and the digest algorithm. Every
+    // job for the same form brings the same schemas, canonicalizing them again is the costly part.
+    private static final Map<String, String> digests = new ConcurrentHashMap<>();
+
+    private static final Processor processor = new Processor(false);
+
     private final String identifierUri;
     private final String identifierVersion;
     private final String xsdSchema;
@@ -71,6 +98,10 @@ public class XDCTransformer {
     }
 
     public DSSDocument transform(DSSDocument dssDocument) {
+        return STREAMING ? transformWithStreaming(dssDocument) : transformWithDOM(dssDocument);
+    }
+
+    public DSSDocument transformWithDOM(DSSDocument dssDocument) {
         try {
             var xmlByteArrayInput = dssDocument.openStream().readAllBytes();
             parseDOMDocument(new String(xmlByteArrayInput, StandardCharsets.UTF_8));
@@ -122,6 +153,205 @@ public class XDCTransformer {
         return outputTarget.getWriter().toString();
     }
 
+    // Copies the document event by event into the container as it is parsed and serializes it with Saxon, the same
+    // serializer the DOM path ends up with. Comments and processing instructions after the document element go before
+    // the container, where moving the element leaves them in the DOM path. They are rare, so a document that has them
+    // is read once more with them known up front.
+    public DSSDocument transformWithStreaming(DSSDocument dssDocument) {
+        try {
+            var epilog = new ArrayList<Node>();
+            var transformed = writeContainer(dssDocument, List.of(), epilog);
+            if (!epilog.isEmpty()) {
+                SpillingOutputStream.discard(transformed);
+                transformed = writeContainer(dssDocument, epilog, new ArrayList<>());
+            }
+
+            transformed.setName(dssDocument.getName());
+            return transformed;
+        } catch (XMLStreamException | SAXException | SaxonApiException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // comment when target is null, processing instruction otherwise
+    private record Node(String target, String text) {
+    }
+
+    // Written through the SAX handler of the serializer, its XMLStreamWriter drops undeclarations of the default
+    // namespace
+    private CommonDocument writeContainer(DSSDocument dssDocument, List<Node> epilog, List<Node> foundEpilog)
+            throws XMLStreamException, SAXException, SaxonApiException, IOException {
+        var output = new SpillingOutputStream();
+        try (var input = new InputStreamReader(dssDocument.openStream(), StandardCharsets.UTF_8)) {
+            var reader = createXMLInputFactory().createXMLStreamReader(input);
+            var handler = processor.newSerializer(output).getContentHandler();
+            var depth = 0;
+            var isDocumentDone = false;
+
+            handler.startDocument();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        if (depth == 0) {
+                            documentXmlns = getDefaultNamespace(reader);
+                            for (var node : epilog)
+                                writeNode(handler, node);
+                            writeXMLDataStart(handler);
+                        }
+
+                        depth++;
+                        for (var i = 0; i < reader.getNamespaceCount(); i++)
+                            handler.startPrefixMapping(nullToEmpty(reader.getNamespacePrefix(i)), nullToEmpty(reader.getNamespaceURI(i)));
+                        handler.startElement(nullToEmpty(reader.getNamespaceURI()), reader.getLocalName(),
+                                getName(reader.getPrefix(), reader.getLocalName()), getAttributes(reader));
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        handler.endElement(nullToEmpty(reader.getNamespaceURI()), reader.getLocalName(),
+                                getName(reader.getPrefix(), reader.getLocalName()));
+                        for (var i = 0; i < reader.getNamespaceCount(); i++)
+                            handler.endPrefixMapping(nullToEmpty(reader.getNamespacePrefix(i)));
+
+                        if (--depth == 0) {
+                            writeXMLDataEnd(handler);
+                            isDocumentDone = true;
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (depth > 0)
+                            handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    case XMLStreamConstants.COMMENT, XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                        var node = reader.getEventType() == XMLStreamConstants.COMMENT
+                                ? new Node(null, reader.getText())
+                                : new Node(reader.getPITarget(), reader.getPIData());
+                        if (isDocumentDone)
+                            foundEpilog.add(node);
+                        else
+                            writeNode(handler, node);
+                    }
+                    default -> {
+                    }
+                }
+            }
+
+            reader.close();
+            handler.endDocument();
+        } catch (XMLStreamException | SAXException | SaxonApiException | IOException | RuntimeException e) {
+            SpillingOutputStream.discard(output.toDocument());
+            throw e;
+        }
+
+        return output.toDocument();
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        var factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+
+        return factory;
+    }
+
+    // the content handler of the serializer takes comments as a lexical handler too
+    private static void writeNode(ContentHandler handler, Node node) throws SAXException {
+        if (node.target() == null)
+            ((LexicalHandler) handler).comment(node.text().toCharArray(), 0, node.text().length());
+        else
+            handler.processingInstruction(node.target(), nullToEmpty(node.text()));
+    }
+
+    private static String getName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String getDefaultNamespace(XMLStreamReader reader) {
+        for (var i = 0; i < reader.getNamespaceCount(); i++) {
+            var prefix = reader.getNamespacePrefix(i);
+            if (prefix == null || prefix.isEmpty())
+                return nullToEmpty(reader.getNamespaceURI(i));
+        }
+
+        return "";
+    }
+
+    // Sorted by name like the attributes of a DOM element, which the DOM path serializes in that order
+    private static Attributes getAttributes(XMLStreamReader reader) {
+        var names = new ArrayList<String>(reader.getAttributeCount());
+        for (var i = 0; i < reader.getAttributeCount(); i++)
+            names.add(getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)));
+
+        var attributes = new AttributesImpl();
+        for (var name : names.stream().sorted().toList()) {
+            var i = names.indexOf(name);
+            attributes.addAttribute(nullToEmpty(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i), name,
+                    "CDATA", reader.getAttributeValue(i));
+        }
+
+        return attributes;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private void writeXMLDataStart(ContentHandler handler) throws SAXException {
+        if (containerXmlns != null)
+            handler.startPrefixMapping("xdc", containerXmlns);
+
+        startElement(handler, "XMLDataContainer");
+        startElement(handler, "XMLData",
+                "ContentType", "application/xml; charset=UTF-8",
+                "Identifier", identifierUri,
+                "Version", identifierVersion);
+    }
+
+    private void writeXMLDataEnd(ContentHandler handler) throws SAXException {
+        endElement(handler, "XMLData");
+        startElement(handler, "UsedSchemasReferenced");
+        if (xsdSchema != null) {
+            startElement(handler, "UsedXSDReference",
+                    "DigestMethod", toNamespacedString(digestAlgorithm),
+                    "DigestValue", computeDigest(xsdSchema),
+                    "TransformAlgorithm", canonicalizationMethod);
+            writeText(handler, buildXSDReference());
+            endElement(handler, "UsedXSDReference");
+        }
+
+        if (xsltSchema != null) {
+            startElement(handler, "UsedPresentationSchemaReference",
+                    "ContentType", "application/xslt+xml",
+                    "DigestMethod", toNamespacedString(digestAlgorithm),
+                    "DigestValue", computeDigest(xsltSchema),
+                    "Language", "sk",
+                    "MediaDestinationTypeDescription", mediaDestinationTypeDescription.name(),
+                    "TransformAlgorithm", canonicalizationMethod);
+            writeText(handler, buildXSLTReference());
+            endElement(handler, "UsedPresentationSchemaReference");
+        }
+
+        endElement(handler, "UsedSchemasReferenced");
+        endElement(handler, "XMLDataContainer");
+        if (containerXmlns != null)
+            handler.endPrefixMapping("xdc");
+    }
+
+    // container elements, attributes are pairs of name and value in the order of their names
+    private void startElement(ContentHandler handler, String localName, String... attributes) throws SAXException {
+        var list = new AttributesImpl();
+        for (var i = 0; i < attributes.length; i += 2)
+            list.addAttribute("", attributes[i], attributes[i], "CDATA", attributes[i + 1]);
+
+        handler.startElement(nullToEmpty(containerXmlns), localName, "xdc:" + localName, list);
+    }
+
+    private void endElement(ContentHandler handler, String localName) throws SAXException {
+        handler.endElement(nullToEmpty(containerXmlns), localName, "xdc:" + localName);
+    }
+
+    private static void writeText(ContentHandler handler, String text) throws SAXException {
+        handler.characters(text.toCharArray(), 0, text.length());
+    }
+
     private Element createXMLDataContainer() {
         var element = document.createElement("xdc:XMLDataContainer");
         if (containerXmlns != null)
@@ -164,6 +394,23 @@ public class XDCTransformer {
 
     private String computeDigest(String data) {
         var asBytes = data.getBytes(StandardCharsets.UTF_8);
+        var key = Base64.getEncoder().encodeToString(DSSUtils.digest(DigestAlgorithm.SHA256, asBytes)) + " "
+                + canonicalizationMethod + " " + digestAlgorithm.name();
+
+        var cached = digests.get(key);
+        if (cached != null)
+            return cached;
+
+        var digest = canonicalizeAndDigest(asBytes);
+        // when full an arbitrary entry goes, a form still in use is cached again by its next job
+        if (digests.size() >= DIGEST_CACHE_SIZE)
+            digests.keySet().stream().findAny().ifPresent(digests::remove);
+
+        digests.put(key, digest);
+        return digest;
+    }
+
+    private String canonicalizeAndDigest(byte[] asBytes) {
         var canonicalizedData = DSSXMLUtils.canonicalize(canonicalizationMethod, asBytes);
         var digest = DSSUtils.digest(digestAlgorithm, canonicalizedData);
         var asBase64 = Base64.getEncoder().encode(digest);
@@ -0,0 +1,167 @@
+package digital.slovensko.autogram.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+// Passes on only the document inside XMLData of an XDC while it is being parsed, so the content never has to be
+// copied out of a tree of the whole container. Namespaces declared on the container, except its own, stay in scope
+// for the content.
+class XMLDataFilter extends XMLFilterImpl implements LexicalHandler {
+    private static final String XDC_NAMESPACE = "http://data.gov.sk/def/container/xmldatacontainer+xml/1.1";
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    private final Deque<List<String[]>> declaredPrefixes = new ArrayDeque<>();
+    private List<String[]> pendingPrefixes = new ArrayList<>();
+    private List<String> inheritedPrefixes = List.of();
+    private LexicalHandler lexicalHandler;
+    private boolean isXMLDataFound;
+    private boolean isInXMLData;
+    private boolean isDataDone;
+    private int depth;
+
+    XMLDataFilter(XMLReader parent) {
+        super(parent);
+    }
+
+    boolean isXMLDataFound() {
+        return isXMLDataFound;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+        if (LEXICAL_HANDLER.equals(name)) {
+            lexicalHandler = (LexicalHandler) value;
+            super.setProperty(name, this);
+        } else {
+            super.setProperty(name, value);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (depth > 0)
+            super.startPrefixMapping(prefix, uri);
+        else
+            pendingPrefixes.add(new String[]{prefix, uri});
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (depth > 0)
+            super.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        if (depth > 0) {
+            depth++;
+            super.startElement(uri, localName, qName, atts);
+            return;
+        }
+
+        if (isInXMLData && !isDataDone) {
+            // the root of the content, gets all namespaces in scope including its own
+            var inScope = new LinkedHashMap<String, String>();
+            declaredPrefixes.descendingIterator().forEachRemaining(prefixes -> prefixes.forEach(p -> inScope.put(p[0], p[1])));
+            inScope.values().removeIf(XDC_NAMESPACE::equals);
+            pendingPrefixes.forEach(p -> inScope.put(p[0], p[1]));
+            pendingPrefixes = new ArrayList<>();
+
+            for (var entry : inScope.entrySet())
+                super.startPrefixMapping(entry.getKey(), entry.getValue());
+
+            inheritedPrefixes = new ArrayList<>(inScope.keySet());
+            depth = 1;
+            super.startElement(uri, localName, qName, atts);
+            return;
+        }
+
+        declaredPrefixes.push(pendingPrefixes);
+        pendingPrefixes = new ArrayList<>();
+
+        if (!isXMLDataFound && XDC_NAMESPACE.equals(uri) && "XMLData".equals(localName)) {
+            isXMLDataFound = true;
+            isInXMLData = true;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (depth > 0) {
+            super.endElement(uri, localName, qName);
+            if (--depth == 0) {
+                isDataDone = true;
+                for (var prefix : inheritedPrefixes)
+                    super.endPrefixMapping(prefix);
+            }
+            return;
+        }
+
+        declaredPrefixes.pop();
+        if (isInXMLData && XDC_NAMESPACE.equals(uri) && "XMLData".equals(localName))
+            isInXMLData = false;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (depth > 0)
+            super.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (depth > 0)
+            super.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (depth > 0)
+            super.processingInstruction(target, data);
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        if (depth > 0 && lexicalHandler != null)
+            lexicalHandler.comment(ch, start, length);
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        if (depth > 0 && lexicalHandler != null)
+            lexicalHandler.startCDATA();
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        if (depth > 0 && lexicalHandler != null)
+            lexicalHandler.endCDATA();
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId) {
+    }
+
+    @Override
+    public void endDTD() {
+    }
+
+    @Override
+    public void startEntity(String name) {
+    }
+
+    @Override
+    public void endEntity(String name) {
+    }
+}
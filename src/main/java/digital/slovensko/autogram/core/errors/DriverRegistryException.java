@@ -0,0 +1,10 @@
+package digital.slovensko.autogram.core.errors;
+
+import java.nio.file.Path;
+
+public class DriverRegistryException extends AutogramException {
+    public DriverRegistryException(Path registryFile, Exception e) {
+        super("Nastala chyba", "Zoznam ovládačov sa nepodarilo načítať", "Súbor " + registryFile + " nie je platný: "
+                + e.getMessage() + "\n\nPoužívajú sa naposledy načítané ovládače. Opravte súbor a skúste znova.", e);
+    }
+}
@@ -0,0 +1,12 @@
+package digital.slovensko.autogram.core.errors;
+
+public class VisualizationFailedException extends AutogramException {
+    public VisualizationFailedException(String description) {
+        super("Nastala chyba", "Dokument sa nepodarilo zobraziť", description);
+    }
+
+    public VisualizationFailedException(Throwable e) {
+        super("Nastala chyba", "Dokument sa nepodarilo zobraziť", "Transformácia dokumentu zlyhala: " + e.getMessage()
+                + "\n\nDokument môžete podpísať aj bez zobrazenia, skontrolujte však, či ide o dokument, ktorý chcete podpísať.", e);
+    }
+}
@@ -0,0 +1,207 @@
+package digital.slovensko.autogram.drivers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import digital.slovensko.autogram.core.Configuration;
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.core.errors.DriverRegistryException;
+import digital.slovensko.autogram.util.UserDirectories;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+// Built-in drivers plus the ones listed in the registry file in the user config directory, an entry named like a
+// built-in driver replaces it. Which drivers are installed is remembered and checked again only when something changes
+// in the directories of their modules or of the registry file, so picking a key does not touch the filesystem. Without
+// a watch service drivers are checked on every call as before.
+public class DriverRegistry {
+    private static final Gson gson = new Gson();
+
+    private final Path registryFile;
+    private final WatchService watchService;
+    private final Map<Path, WatchKey> watchedDirectories = new HashMap<>();
+    private FileTime registryModified;
+    private List<TokenDriver> customDrivers = List.of();
+    private AutogramException error;
+    private volatile List<TokenDriver> drivers;
+    private volatile List<TokenDriver> availableDrivers;
+
+    // registry file entries, passwords are never stored, needsPassword only says whether to ask for one
+    private static class Registry {
+        List<Entry> drivers;
+    }
+
+    private static class Entry {
+        String name;
+        String path;
+        Integer slotIndex;
+        Boolean needsPassword;
+        Boolean signsDigest;
+    }
+
+    public DriverRegistry(Path registryFile) {
+        this.registryFile = registryFile.toAbsolutePath();
+        this.watchService = createWatchService();
+        refresh();
+
+        if (watchService != null) {
+            var thread = new Thread(this::watch, "autogram-driver-registry");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public static DriverRegistry buildFromConfiguration() {
+        var filename = Configuration.getProperty("drivers.registryFile");
+        return new DriverRegistry(UserDirectories.getConfigDirectory().resolve(filename));
+    }
+
+    public List<TokenDriver> getDrivers() {
+        return drivers;
+    }
+
+    // Why the registry file was not used, reported once. The drivers of the last valid file stay in use meanwhile.
+    public synchronized AutogramException takeError() {
+        var taken = error;
+        error = null;
+        return taken;
+    }
+
+    public List<TokenDriver> getAvailableDrivers() {
+        if (watchService == null)
+            return drivers.stream().filter(TokenDriver::isInstalled).toList();
+
+        return availableDrivers;
+    }
+
+    private static WatchService createWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private synchronized void refresh() {
+        var custom = loadCustomDrivers();
+        var all = new ArrayList<TokenDriver>();
+        for (var builtIn : TokenDriver.getBuiltInDrivers())
+            all.add(custom.stream().filter(driver -> driver.getName().equals(builtIn.getName())).findFirst().orElse(builtIn));
+        for (var driver : custom) {
+            if (!all.contains(driver))
+                all.add(driver);
+        }
+        drivers = List.copyOf(all);
+        availableDrivers = drivers.stream().filter(TokenDriver::isInstalled).toList();
+
+        if (watchService != null)
+            watchDirectories();
+    }
+
+    // Parsed again only when the file changes, so drivers of an unchanged registry keep their identity and with it
+    // their open token sessions
+    private List<TokenDriver> loadCustomDrivers() {
+        try {
+            var modified = Files.exists(registryFile) ? Files.getLastModifiedTime(registryFile) : null;
+            if (modified == null) {
+                registryModified = null;
+                customDrivers = List.of();
+                error = null;
+            } else if (!modified.equals(registryModified)) {
+                registryModified = modified;
+                customDrivers = parse(Files.readString(registryFile));
+                error = null;
+            }
+        } catch (IOException | JsonParseException e) {
+            // read again only once the file changes, so the error is not reported over and over
+            error = new DriverRegistryException(registryFile, e);
+        }
+
+        return customDrivers;
+    }
+
+    private static List<TokenDriver> parse(String json) {
+        var registry = gson.fromJson(json, Registry.class);
+        if (registry == null || registry.drivers == null)
+            return List.of();
+
+        var result = new ArrayList<TokenDriver>();
+        for (var entry : registry.drivers) {
+            if (entry.name == null || entry.path == null)
+                throw new JsonParseException("Driver entry needs both name and path");
+
+            result.add(new PKCS11TokenDriver(
+                    entry.name,
+                    Path.of(entry.path),
+                    entry.needsPassword == null || entry.needsPassword,
+                    entry.signsDigest != null && entry.signsDigest,
+                    entry.slotIndex != null ? entry.slotIndex : -1));
+        }
+
+        return result;
+    }
+
+    // A module directory that does not exist yet is watched through its nearest existing parent, installing the
+    // module creates it there
+    private void watchDirectories() {
+        var directories = new HashSet<Path>();
+        directories.add(nearestExistingDirectory(registryFile.getParent()));
+        for (var driver : drivers)
+            directories.add(nearestExistingDirectory(driver.getPath().toAbsolutePath().getParent()));
+        directories.remove(null);
+
+        watchedDirectories.entrySet().removeIf(entry -> {
+            if (directories.contains(entry.getKey()) && entry.getValue().isValid())
+                return false;
+
+            entry.getValue().cancel();
+            return true;
+        });
+
+        for (var directory : directories) {
+            if (watchedDirectories.containsKey(directory))
+                continue;
+
+            try {
+                watchedDirectories.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+            } catch (IOException e) {
+                // not watchable, changes in it show up after the next change elsewhere
+            }
+        }
+    }
+
+    private static Path nearestExistingDirectory(Path path) {
+        while (path != null && !Files.isDirectory(path))
+            path = path.getParent();
+
+        return path;
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            key.pollEvents();
+            key.reset();
+            refresh();
+        }
+    }
+}
@@ -7,12 +7,32 @@ import java.nio.file.Path;
 import java.security.KeyStore;
 
 public class PKCS11TokenDriver extends TokenDriver {
+    private final int slotIndex;
+
     public PKCS11TokenDriver(String name, Path path, boolean needsPassword) {
         super(name, path, needsPassword);
+        this.slotIndex = -1;
+    }
+
+    public PKCS11TokenDriver(String name, Path path, boolean needsPassword, boolean signsDigest) {
+        this(name, path, needsPassword, signsDigest, -1);
+    }
+
+    // slotIndex picks the slot by its position in the slot list of the module, -1 leaves it to the module
+    public PKCS11TokenDriver(String name, Path path, boolean needsPassword, boolean signsDigest, int slotIndex) {
+        super(name, path, needsPassword, signsDigest);
+        this.slotIndex = slotIndex;
+    }
+
+    public int getSlotIndex() {
+        return slotIndex;
     }
 
     @Override
     public AbstractKeyStoreTokenConnection createTokenWithPassword(char[] password) {
+        if (slotIndex >= 0)
+            return new Pkcs11SignatureToken(getPath().toString(), new KeyStore.PasswordProtection(password), -1, slotIndex, null);
+
         return new Pkcs11SignatureToken(getPath().toString(), new KeyStore.PasswordProtection(password), -1);
     }
 }
@@ -31,11 +31,17 @@ public abstract class TokenDriver {
     protected final String name;
     private final Path path;
     private final boolean needsPassword;
+    private final boolean signsDigest;
 
     public TokenDriver(String name, Path path, boolean needsPassword) {
+        this(name, path, needsPassword, false);
+    }
+
+    public TokenDriver(String name, Path path, boolean needsPassword, boolean signsDigest) {
         this.name = name;
         this.path = path;
         this.needsPassword = needsPassword;
+        this.signsDigest = signsDigest;
     }
 
     public String getName() {
@@ -50,11 +56,8 @@ public abstract class TokenDriver {
         return path.toFile().exists();
     }
 
-    public static List<TokenDriver> getAvailableDrivers() {
-        return getAllDrivers().stream().filter(TokenDriver::isInstalled).toList();
-    }
-
-    private static List<TokenDriver> getAllDrivers() {
+    // See DriverRegistry for the drivers actually offered
+    public static List<TokenDriver> getBuiltInDrivers() {
         switch (OperatingSystem.current()) {
             case WINDOWS -> {
                 return WINDOWS_DRIVERS;
@@ -74,4 +77,10 @@ public abstract class TokenDriver {
     public boolean needsPassword() {
         return needsPassword;
     }
+
+    // Digest is computed in the JVM and only the digest is sent to the token, see SigningKey. Off for the built-in
+    // drivers, a registry entry of the same name turns it on for a module known to support it.
+    public boolean signsDigest() {
+        return signsDigest;
+    }
 }
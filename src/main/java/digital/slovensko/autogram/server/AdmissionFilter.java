@@ -0,0 +1,83 @@
+package digital.slovensko.autogram.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import digital.slovensko.autogram.server.dto.ErrorResponse;
+import digital.slovensko.autogram.server.errors.ServerBusyException;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static digital.slovensko.autogram.core.Configuration.getProperty;
+
+// Limits how many requests an endpoint handles at once and rejects exchanges the executor had no room for
+public class AdmissionFilter extends Filter {
+    private final String endpoint;
+    private final int limit;
+    private final Semaphore permits;
+    private final String retryAfterSeconds;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public AdmissionFilter(String endpoint, int limit, int retryAfterSeconds) {
+        this.endpoint = endpoint;
+        this.limit = limit;
+        this.permits = limit > 0 ? new Semaphore(limit) : null;
+        this.retryAfterSeconds = Integer.toString(retryAfterSeconds);
+    }
+
+    // limit 0 means the endpoint is only limited by the executor
+    public static AdmissionFilter buildFromConfiguration(String endpoint) {
+        return new AdmissionFilter(endpoint,
+            Integer.parseInt(getProperty("server.concurrency." + endpoint)),
+            Integer.parseInt(getProperty("server.retryAfterSeconds")));
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (ServerExecutor.isCurrentExchangeRejected() || (permits != null && !permits.tryAcquire())) {
+            reject(exchange);
+            return;
+        }
+
+        activeCount.incrementAndGet();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            activeCount.decrementAndGet();
+            if (permits != null)
+                permits.release();
+        }
+    }
+
+    private void reject(HttpExchange exchange) {
+        rejectedCount.increment();
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "Retry-After");
+        exchange.getResponseHeaders().add("Retry-After", retryAfterSeconds);
+        EndpointUtils.respondWithError(ErrorResponse.buildFromException(new ServerBusyException()), exchange);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public String description() {
+        return "Admission control for " + endpoint;
+    }
+}
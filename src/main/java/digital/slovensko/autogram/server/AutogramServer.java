@@ -1,5 +1,6 @@
 package digital.slovensko.autogram.server;
 
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpsConfigurator;
 import com.sun.net.httpserver.HttpsParameters;
@@ -14,15 +15,15 @@ import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.nio.file.Paths;
 import java.security.KeyStore;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
 
 import static digital.slovensko.autogram.core.Configuration.getProperty;
 
 public class AutogramServer {
     private final HttpServer server;
     private final Autogram autogram;
-
+    private final ServerExecutor executor = ServerExecutor.buildFromConfiguration();
 
     public AutogramServer(Autogram autogram, String hostname, int port, boolean isHttps) {
         this.autogram = autogram;
@@ -30,13 +31,27 @@ public class AutogramServer {
     }
 
     public void start() {
-        server.createContext("/info", new InfoEndpoint());
-        server.createContext("/sign", new SignEndpoint(autogram));
-        server.createContext("/docs", new DocumentationEndpoint());
-        server.setExecutor(Executors.newCachedThreadPool());
+        var filters = new ArrayList<AdmissionFilter>();
+        createContext("/info", "info", new InfoEndpoint(executor, filters), filters);
+        createContext("/sign", "sign", new SignEndpoint(autogram), filters);
+        createContext("/batch", "batch", new BatchEndpoint(autogram), filters);
+        createContext("/jobs", "jobs", new JobsEndpoint(autogram, JobRegistry.buildFromConfiguration(), executor), filters);
+        createContext("/signatures", "signatures",
+                new SignaturesEndpoint(autogram, PreparedSignatureRegistry.buildFromConfiguration()), filters);
+        createContext("/docs", "docs", new DocumentationEndpoint(), filters);
+        createContext("/metrics", "metrics", new MetricsEndpoint(), filters);
+        server.setExecutor(executor);
         server.start();
     }
 
+    private void createContext(String path, String name, HttpHandler handler, List<AdmissionFilter> filters) {
+        var filter = AdmissionFilter.buildFromConfiguration(name);
+        filters.add(filter);
+        var context = server.createContext(path, handler);
+        context.getFilters().add(filter);
+        context.getFilters().add(new ContentEncodingFilter());
+    }
+
     private HttpServer buildServer(String hostname, int port, boolean isHttps) {
         try {
             if (!isHttps)
@@ -83,7 +98,8 @@ public class AutogramServer {
     }
 
     public void stop() {
-        ((ExecutorService) server.getExecutor()).shutdown(); // TODO find out why requests hang
+        // exchanges waiting for the user are not finished by the executor, stop the server before the pool
         server.stop(1);
+        executor.shutdownNow();
     }
 }
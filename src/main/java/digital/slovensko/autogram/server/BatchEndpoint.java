@@ -0,0 +1,84 @@
+package digital.slovensko.autogram.server;
+
+import com.google.gson.JsonSyntaxException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import digital.slovensko.autogram.core.Autogram;
+import digital.slovensko.autogram.core.BatchSigningJob;
+import digital.slovensko.autogram.core.Metrics;
+import digital.slovensko.autogram.core.SigningJob;
+import digital.slovensko.autogram.server.dto.ErrorResponse;
+import digital.slovensko.autogram.server.dto.SignRequestBody;
+import digital.slovensko.autogram.server.errors.MalformedBodyException;
+import digital.slovensko.autogram.server.errors.RequestValidationException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchEndpoint implements HttpHandler {
+    private final Autogram autogram;
+
+    public BatchEndpoint(Autogram autogram) {
+        this.autogram = autogram;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
+
+        // Allow preflight requests
+        if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+
+        List<SignRequestBody> bodies;
+        var start = System.nanoTime();
+        try {
+            bodies = SignRequestBodyReader.readBatch(exchange.getRequestBody());
+            Metrics.record(Metrics.Phase.REQUEST_DECODE, Metrics.Labels.NONE, System.nanoTime() - start);
+        } catch (JsonSyntaxException e) {
+            var response = ErrorResponse.buildFromException(new MalformedBodyException(e.getMessage(), e));
+            EndpointUtils.respondWithError(response, exchange);
+            return;
+        } catch (Exception e) {
+            EndpointUtils.respondWithError(ErrorResponse.buildFromException(e), exchange);
+            return;
+        }
+
+        try {
+            if (bodies.isEmpty())
+                throw new RequestValidationException("Documents are required", "");
+
+            // the whole batch is validated before anything is shown to the user
+            var responder = new BatchServerResponder(exchange, bodies.size());
+            var jobs = new ArrayList<SigningJob>();
+            for (var i = 0; i < bodies.size(); i++) {
+                var body = bodies.get(i);
+                jobs.add(new SigningJob(body.getDocument(), body.getParameters(),
+                        responder.forItem(i, body::discardDecodedContent)));
+            }
+
+            autogram.batchSign(new BatchSigningJob(jobs, isHashTreeMode(exchange)));
+        } catch (Exception e) {
+            bodies.forEach(SignRequestBody::discardDecodedContent);
+            EndpointUtils.respondWithError(ErrorResponse.buildFromException(e), exchange);
+        }
+    }
+
+    // ?mode=hashTree signs all documents with a single signature, each document gets a proof container back
+    private static boolean isHashTreeMode(HttpExchange exchange) {
+        var query = exchange.getRequestURI().getQuery();
+        if (query == null)
+            return false;
+
+        for (var parameter : query.split("&"))
+            if (parameter.equals("mode=hashTree"))
+                return true;
+
+        return false;
+    }
+}
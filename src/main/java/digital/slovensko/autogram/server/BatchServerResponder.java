@@ -0,0 +1,127 @@
+package digital.slovensko.autogram.server;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import digital.slovensko.autogram.core.Metrics;
+import digital.slovensko.autogram.core.Responder;
+import digital.slovensko.autogram.core.SignedDocument;
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.server.dto.ErrorResponse;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Streams batch results as newline delimited JSON, one line per document in the order they finish. Every document
+// gets exactly one line, later results for it are dropped, and nothing is written once the stream is closed.
+public class BatchServerResponder {
+    private final static Gson gson = new Gson();
+
+    private final HttpExchange exchange;
+    private final boolean[] responded;
+    private int remaining;
+    private OutputStream body;
+    private boolean isClosed;
+
+    public BatchServerResponder(HttpExchange exchange, int size) {
+        this.exchange = exchange;
+        this.responded = new boolean[size];
+        this.remaining = size;
+    }
+
+    public Responder forItem(int index, Runnable onFinished) {
+        return new Responder() {
+            @Override
+            public void onDocumentSigned(SignedDocument signedDocument) {
+                if (writeSigned(index, signedDocument))
+                    onFinished.run();
+            }
+
+            @Override
+            public void onDocumentSignFailed(AutogramException error) {
+                if (writeError(index, error))
+                    onFinished.run();
+            }
+        };
+    }
+
+    private boolean claim(int index) {
+        if (responded[index])
+            return false;
+
+        responded[index] = true;
+        return true;
+    }
+
+    private synchronized boolean writeSigned(int index, SignedDocument signedDocument) {
+        if (!claim(index))
+            return false;
+        if (isClosed)
+            return true;
+
+        var signer = signedDocument.getCertificate().getSubject().getPrincipal().toString();
+        var issuer = signedDocument.getCertificate().getIssuer().getPrincipal().toString();
+
+        var start = System.nanoTime();
+        try {
+            var output = open();
+            EndpointUtils.writeSignedDocument(output, "\"index\":" + index + ",", signedDocument.getDocument(), signer, issuer);
+            endLine(output);
+        } catch (IOException e) {
+            abort();
+        } finally {
+            Metrics.record(Metrics.Phase.RESPONSE_ENCODE, Metrics.Labels.NONE, System.nanoTime() - start);
+        }
+
+        return true;
+    }
+
+    private synchronized boolean writeError(int index, AutogramException error) {
+        if (!claim(index))
+            return false;
+        if (isClosed)
+            return true;
+
+        var response = ErrorResponse.buildFromException(error);
+
+        try {
+            var output = open();
+            output.write((
+                    "{\"index\":" + index +
+                    ",\"status\":" + response.getStatusCode() +
+                    ",\"error\":" + gson.toJson(response.getBody()) + "}"
+            ).getBytes(StandardCharsets.UTF_8));
+            endLine(output);
+        } catch (IOException e) {
+            abort();
+        }
+
+        return true;
+    }
+
+    private OutputStream open() throws IOException {
+        if (body == null) {
+            exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+            body = new BufferedOutputStream(EndpointUtils.openResponseBody(exchange, 200, -1));
+        }
+
+        return body;
+    }
+
+    private void endLine(OutputStream output) throws IOException {
+        output.write('\n');
+        if (--remaining == 0) {
+            isClosed = true;
+            output.close();
+        } else {
+            output.flush();
+        }
+    }
+
+    // the client is gone, the rest of the batch is still signed but has nowhere to go
+    private void abort() {
+        isClosed = true;
+        exchange.close();
+    }
+}
@@ -0,0 +1,93 @@
+package digital.slovensko.autogram.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import digital.slovensko.autogram.server.dto.ErrorResponse;
+import digital.slovensko.autogram.server.errors.MalformedBodyException;
+import digital.slovensko.autogram.server.errors.UnsupportedContentEncodingException;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+// Decompresses gzip or deflate request bodies while they are read, response compression is in EndpointUtils
+public class ContentEncodingFilter extends Filter {
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        var encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if (encoding != null) {
+            try {
+                switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+                    case "", "identity" -> {}
+                    case "gzip", "x-gzip" -> exchange.setStreams(
+                            new DecompressingStream(new GZIPInputStream(exchange.getRequestBody(), 8192)), null);
+                    case "deflate" -> exchange.setStreams(
+                            new DecompressingStream(new InflaterInputStream(exchange.getRequestBody())), null);
+                    default -> {
+                        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+                        exchange.getResponseHeaders().add("Accept-Encoding", "gzip, deflate");
+                        var error = ErrorResponse.buildFromException(new UnsupportedContentEncodingException(encoding));
+                        EndpointUtils.respondWithError(error, exchange);
+                        return;
+                    }
+                }
+            } catch (ZipException | EOFException e) {
+                // the gzip header is read right away
+                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+                EndpointUtils.respondWithError(ErrorResponse.buildFromException(malformed(e)), exchange);
+                return;
+            }
+        }
+
+        chain.doFilter(exchange);
+    }
+
+    @Override
+    public String description() {
+        return "Content-Encoding of request bodies";
+    }
+
+    private static MalformedBodyException malformed(IOException e) {
+        var reason = e.getMessage() != null ? e.getMessage() : "Unexpected end of compressed data";
+        return new MalformedBodyException("Request body does not match its Content-Encoding: " + reason, e);
+    }
+
+    // Reports a body that fails to inflate as malformed so endpoints answer it with 400 like other malformed bodies
+    private static class DecompressingStream extends FilterInputStream {
+        DecompressingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return in.read();
+            } catch (ZipException | EOFException e) {
+                throw malformed(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return in.read(b, off, len);
+            } catch (ZipException | EOFException e) {
+                throw malformed(e);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return in.skip(n);
+            } catch (ZipException | EOFException e) {
+                throw malformed(e);
+            }
+        }
+    }
+}
@@ -3,27 +3,101 @@ package digital.slovensko.autogram.server;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
 
 import static java.util.Objects.requireNonNull;
 
+// Documentation does not change while the app runs, it is loaded and gzipped once and revalidated with ETags
 public class DocumentationEndpoint implements HttpHandler {
+    private static final String CACHE_CONTROL = "public, max-age=300";
+
+    private final Resource html = Resource.load("index.html", "text/html; charset=utf-8");
+    private final Resource yaml = Resource.load("server.yml", "text/yaml; charset=utf-8");
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         boolean isYaml = exchange.getRequestURI().getPath().endsWith(".yml");
-        var mimeType = isYaml ? "text/yaml" : "text/html";
-        var filename = isYaml ? "server.yml" : "index.html";
+        var resource = isYaml ? yaml : html;
+
+        var isGzip = "gzip".equals(EndpointUtils.negotiateEncoding(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+        var bytes = isGzip ? resource.gzipped() : resource.bytes();
+        var etag = isGzip ? resource.gzippedEtag() : resource.etag();
+
+        var headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", resource.mimeType());
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", CACHE_CONTROL);
+        headers.set("Vary", "Accept-Encoding");
+
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        if (isGzip)
+            headers.set("Content-Encoding", "gzip");
+
+        if (exchange.getRequestMethod().equalsIgnoreCase("HEAD")) {
+            headers.set("Content-Length", Integer.toString(bytes.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        try (var responseStream = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, bytes.length);
+            responseStream.write(bytes);
+        }
+    }
+
+    // If-None-Match uses weak comparison and may list several tags
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+
+        for (var tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+
+        return false;
+    }
 
-        exchange.getResponseHeaders().set("Content-Type", mimeType);
+    private record Resource(String mimeType, byte[] bytes, String etag, byte[] gzipped, String gzippedEtag) {
+        static Resource load(String filename, String mimeType) {
+            try (var stream = DocumentationEndpoint.class.getResourceAsStream(filename)) {
+                var bytes = requireNonNull(stream).readAllBytes();
 
-        // automatically closes both streams
-        try (var stream = getClass().getResourceAsStream(filename);
-             var responseStream = exchange.getResponseBody()) {
-            exchange.sendResponseHeaders(200, 0);
+                var gzipped = new ByteArrayOutputStream();
+                try (var gzip = new GZIPOutputStream(gzipped)) {
+                    gzip.write(bytes);
+                }
+
+                // strong ETags must differ between encodings of the same resource
+                var hash = hash(bytes);
+                return new Resource(mimeType, bytes, "\"" + hash + "\"", gzipped.toByteArray(), "\"" + hash + "-gzip\"");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
 
-            requireNonNull(stream).transferTo(responseStream);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        private static String hash(byte[] bytes) {
+            try {
+                var digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 }
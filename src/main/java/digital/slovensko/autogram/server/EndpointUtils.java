@@ -1,37 +1,235 @@
 package digital.slovensko.autogram.server;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 import com.sun.net.httpserver.HttpExchange;
+import digital.slovensko.autogram.core.Metrics;
 import digital.slovensko.autogram.server.dto.ErrorResponse;
+import digital.slovensko.autogram.server.dto.SignRequestBody;
+import digital.slovensko.autogram.server.errors.MalformedBodyException;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
 
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static digital.slovensko.autogram.core.Configuration.getProperty;
 
 public class EndpointUtils {
     private final static Gson gson = new Gson();
+    private final static int compressionThreshold = Integer.parseInt(getProperty("server.compression.threshold"));
 
     public static void respondWithError(ErrorResponse error, HttpExchange exchange) {
         try {
             exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(error.getStatusCode(), 0);
-            if (error.getStatusCode() != 204)
-                exchange.getResponseBody().write(gson.toJson(error.getBody()).getBytes());
-            exchange.getResponseBody().close();
+            if (error.getStatusCode() == 204) {
+                exchange.sendResponseHeaders(204, -1);
+                exchange.getResponseBody().close();
+                return;
+            }
+
+            var bytes = gson.toJson(error.getBody()).getBytes();
+            try (var body = openResponseBody(exchange, error.getStatusCode(), bytes.length)) {
+                body.write(bytes);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public static void respondWith(Object response, HttpExchange exchange) {
+        respondWith(200, response, exchange);
+    }
+
+    public static void respondWith(int statusCode, Object response, HttpExchange exchange) {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            var bytes = gson.toJson(response).getBytes();
+            try (var body = openResponseBody(exchange, statusCode, bytes.length)) {
+                body.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Writes the same JSON as SignResponse, but pipes the document through the Base64 encoder
+    // instead of building the whole response as a String
+    public static void respondWithSignedDocument(DSSDocument document, String signer, String issuer, HttpExchange exchange) {
         try {
             exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(200, 0);
-            exchange.getResponseBody().write(gson.toJson(response).getBytes());
-            exchange.getResponseBody().close();
+            var size = getSize(document);
+            var length = size < 0 ? -1 : size * 4 / 3 + 1024;
+
+            try (var body = new BufferedOutputStream(openResponseBody(exchange, 200, length, false))) {
+                writeSignedDocument(body, "", document, signer, issuer);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    // leadingMembers are written right after the opening brace, e.g. "\"index\":1,"
+    static void writeSignedDocument(OutputStream body, String leadingMembers, DSSDocument document, String signer,
+            String issuer) throws IOException {
+        body.write(("{" + leadingMembers + "\"content\":\"").getBytes(StandardCharsets.UTF_8));
+        try (var stream = document.openStream();
+             var encoder = Base64.getEncoder().wrap(nonClosing(body))) {
+            stream.transferTo(encoder);
+        }
+        body.write((
+                "\",\"signedBy\":" + gson.toJson(signer) +
+                ",\"issuedby\":" + gson.toJson(issuer) + "}"
+        ).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void respondWithSignedDocumentBytes(DSSDocument document, String signer, String issuer, HttpExchange exchange) {
+        try {
+            var headers = exchange.getResponseHeaders();
+            var mimeType = document.getMimeType() != null
+                    ? document.getMimeType().getMimeTypeString() : "application/octet-stream";
+            headers.add("Content-Type", mimeType);
+            headers.add("X-Signed-By", encodeHeaderValue(signer));
+            headers.add("X-Issued-By", encodeHeaderValue(issuer));
+            headers.add("Access-Control-Expose-Headers", "X-Signed-By, X-Issued-By");
+
+            // PDF and ASiC containers are compressed already
+            var length = isCompressible(mimeType) ? getSize(document) : 0;
+            try (var body = openResponseBody(exchange, 200, length, false); var stream = document.openStream()) {
+                stream.transferTo(body);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static OutputStream openResponseBody(HttpExchange exchange, int statusCode, long length) throws IOException {
+        return openResponseBody(exchange, statusCode, length, true);
+    }
+
+    // Sends the headers and returns the body compressed with gzip or deflate when the client accepts it and the
+    // response is at least compressionThreshold long. Length -1 means unknown and 0 that it must not be compressed.
+    static OutputStream openResponseBody(HttpExchange exchange, int statusCode, long length, boolean isLengthExact)
+            throws IOException {
+        var encoding = length != 0 && (length < 0 || length >= compressionThreshold)
+                ? negotiateEncoding(exchange.getRequestHeaders().getFirst("Accept-Encoding")) : null;
+
+        if (length != 0)
+            exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+
+        if (encoding == null) {
+            exchange.sendResponseHeaders(statusCode, isLengthExact && length > 0 ? length : 0);
+            return exchange.getResponseBody();
+        }
+
+        exchange.getResponseHeaders().add("Content-Encoding", encoding);
+        exchange.sendResponseHeaders(statusCode, 0);
+
+        // sync flush so streamed responses like NDJSON lines reach the client on flush()
+        if (encoding.equals("gzip"))
+            return new GZIPOutputStream(exchange.getResponseBody(), 8192, true);
+
+        return new DeflaterOutputStream(exchange.getResponseBody(), true);
+    }
+
+    static String negotiateEncoding(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return null;
+
+        String result = null;
+        for (var coding : acceptEncoding.split(",")) {
+            var parts = coding.split(";");
+            var name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (isRejectedByQuality(parts))
+                continue;
+
+            if (name.equals("gzip") || name.equals("x-gzip"))
+                return "gzip";
+
+            if (name.equals("deflate"))
+                result = "deflate";
+        }
+
+        return result;
+    }
+
+    private static boolean isRejectedByQuality(String[] parts) {
+        for (var i = 1; i < parts.length; i++) {
+            var parameter = parts[i].trim().split("=", 2);
+            if (parameter.length == 2 && parameter[0].trim().equals("q")) {
+                try {
+                    return Double.parseDouble(parameter[1].trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/") || mimeType.contains("xml") || mimeType.contains("json");
+    }
+
+    private static long getSize(DSSDocument document) {
+        if (document instanceof FileDocument fileDocument)
+            return fileDocument.getFile().length();
+
+        if (document instanceof InMemoryDocument inMemoryDocument)
+            return inMemoryDocument.getBytes().length;
+
+        return -1;
+    }
+
+    // distinguished names are not ASCII in general, percent-encode them so they survive in a header
+    private static String encodeHeaderValue(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static OutputStream nonClosing(OutputStream stream) {
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    // multipart/form-data carries the document as raw bytes and gets raw bytes back
+    public static boolean isMultipart(HttpExchange exchange) {
+        return MultipartReader.parseBoundary(exchange.getRequestHeaders().getFirst("Content-Type")) != null;
+    }
+
+    public static SignRequestBody readSignRequestBody(HttpExchange exchange) throws IOException {
+        var boundary = MultipartReader.parseBoundary(exchange.getRequestHeaders().getFirst("Content-Type"));
+        var start = System.nanoTime();
+        try {
+            if (boundary != null)
+                return SignRequestBodyReader.readMultipart(exchange.getRequestBody(), boundary);
+
+            return SignRequestBodyReader.read(exchange.getRequestBody());
+        } catch (JsonSyntaxException e) {
+            throw new MalformedBodyException(e.getMessage(), e);
+        } finally {
+            Metrics.record(Metrics.Phase.REQUEST_DECODE, Metrics.Labels.NONE, System.nanoTime() - start);
+        }
+    }
+
     public static <T> T loadFromJsonExchange(HttpExchange exchange, Class<T> classOfT) throws IOException {
         return gson.fromJson(new String(exchange.getRequestBody().readAllBytes()), classOfT);
     }
@@ -6,11 +6,21 @@ import com.sun.net.httpserver.HttpHandler;
 
 import digital.slovensko.autogram.Main;
 import digital.slovensko.autogram.server.dto.InfoResponse;
+import digital.slovensko.autogram.server.dto.ServerLoad;
 import static digital.slovensko.autogram.server.dto.InfoResponse.*;
 
 import java.io.IOException;
+import java.util.List;
 
 public class InfoEndpoint implements HttpHandler {
+    private final ServerExecutor executor;
+    private final List<AdmissionFilter> filters;
+
+    public InfoEndpoint(ServerExecutor executor, List<AdmissionFilter> filters) {
+        this.executor = executor;
+        this.filters = filters;
+    }
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
@@ -24,7 +34,7 @@ public class InfoEndpoint implements HttpHandler {
             return;
         }
 
-        var response = new InfoResponse(Main.getVersion(), getStatus());
+        var response = new InfoResponse(Main.getVersion(), getStatus(), new ServerLoad(executor, filters));
         var gson = new Gson();
 
         try {
@@ -0,0 +1,53 @@
+package digital.slovensko.autogram.server;
+
+import digital.slovensko.autogram.server.errors.TooManyJobsException;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static digital.slovensko.autogram.core.Configuration.getProperty;
+
+// Pending jobs stay until the user finishes them, finished jobs are evicted ttl after they finished
+public class JobRegistry {
+    private final Map<String, ServerJob> jobs = new ConcurrentHashMap<>();
+    private final int maxCount;
+    private final long ttlNanos;
+
+    public JobRegistry(int maxCount, long ttlSeconds) {
+        this.maxCount = maxCount;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public static JobRegistry buildFromConfiguration() {
+        return new JobRegistry(
+            Integer.parseInt(getProperty("server.jobs.maxCount")),
+            Long.parseLong(getProperty("server.jobs.ttlSeconds")));
+    }
+
+    public synchronized ServerJob register(boolean respondWithBytes, Runnable onFinished) throws TooManyJobsException {
+        evictExpired();
+        if (jobs.size() >= maxCount)
+            throw new TooManyJobsException(maxCount);
+
+        var job = new ServerJob(UUID.randomUUID().toString(), respondWithBytes, onFinished);
+        jobs.put(job.getId(), job);
+
+        return job;
+    }
+
+    public ServerJob get(String id) {
+        evictExpired();
+        return jobs.get(id);
+    }
+
+    public ServerJob remove(String id) {
+        return jobs.remove(id);
+    }
+
+    private void evictExpired() {
+        var now = System.nanoTime();
+        jobs.values().removeIf(job -> job.isExpired(now, ttlNanos));
+    }
+}
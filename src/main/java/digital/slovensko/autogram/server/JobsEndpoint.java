@@ -0,0 +1,160 @@
+package digital.slovensko.autogram.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import digital.slovensko.autogram.core.Autogram;
+import digital.slovensko.autogram.core.Metrics;
+import digital.slovensko.autogram.core.SigningJob;
+import digital.slovensko.autogram.server.dto.ErrorResponse;
+import digital.slovensko.autogram.server.dto.JobResponse;
+import digital.slovensko.autogram.server.errors.JobNotFoundException;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static digital.slovensko.autogram.core.Configuration.getProperty;
+
+// POST /jobs submits a document and returns right away, GET /jobs/{id} reports status and GET /jobs/{id}/result
+// returns the same response as /sign. Both GETs accept ?wait=seconds to long-poll, waiting requests are answered on
+// the server executor once the job finishes or the timeout passes, so no server thread is parked meanwhile.
+public class JobsEndpoint implements HttpHandler {
+    private final Autogram autogram;
+    private final JobRegistry registry;
+    private final Executor executor;
+    private final long maxWaitSeconds;
+
+    public JobsEndpoint(Autogram autogram, JobRegistry registry, Executor executor) {
+        this.autogram = autogram;
+        this.registry = registry;
+        this.executor = executor;
+        this.maxWaitSeconds = Long.parseLong(getProperty("server.jobs.maxWaitSeconds"));
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "Location");
+
+        // Allow preflight requests
+        if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+
+        // "", "/{id}" or "/{id}/result"
+        var subpath = exchange.getRequestURI().getPath().substring("/jobs".length());
+        var path = subpath.isEmpty() ? new String[0] : subpath.split("/");
+        var method = exchange.getRequestMethod().toUpperCase();
+
+        try {
+            if (path.length == 0 && method.equals("POST"))
+                submit(exchange);
+            else if (path.length == 2 && method.equals("GET"))
+                respondWhenFinished(exchange, findJob(path[1]), false);
+            else if (path.length == 3 && path[2].equals("result") && method.equals("GET"))
+                respondWhenFinished(exchange, findJob(path[1]), true);
+            else if (path.length == 2 && method.equals("DELETE"))
+                discard(exchange, path[1]);
+            else
+                exchange.sendResponseHeaders(path.length > 3 ? 404 : 405, -1);
+        } catch (Exception e) {
+            EndpointUtils.respondWithError(ErrorResponse.buildFromException(e), exchange);
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        var isBinary = EndpointUtils.isMultipart(exchange);
+        var body = EndpointUtils.readSignRequestBody(exchange);
+
+        try {
+            var job = registry.register(isBinary, body::discardDecodedContent);
+            try {
+                autogram.sign(new SigningJob(body.getDocument(), body.getParameters(), job));
+            } catch (Exception e) {
+                registry.remove(job.getId());
+                throw e;
+            }
+
+            exchange.getResponseHeaders().add("Location", "/jobs/" + job.getId());
+            EndpointUtils.respondWith(202, new JobResponse(job), exchange);
+        } catch (Exception e) {
+            body.discardDecodedContent();
+            throw e;
+        }
+    }
+
+    private ServerJob findJob(String id) throws JobNotFoundException {
+        var job = registry.get(id);
+        if (job == null)
+            throw new JobNotFoundException(id);
+
+        return job;
+    }
+
+    private void respondWhenFinished(HttpExchange exchange, ServerJob job, boolean withResult) {
+        var wait = Math.min(parseWaitSeconds(exchange), maxWaitSeconds);
+        if (job.getStatus() != ServerJob.Status.PENDING || wait <= 0) {
+            respond(exchange, job, withResult);
+            return;
+        }
+
+        job.onFinished().copy()
+            .completeOnTimeout(job, wait, TimeUnit.SECONDS)
+            .thenAcceptAsync(finishedJob -> respond(exchange, finishedJob, withResult), executor)
+            // also when respond threw or the executor is stopping, the exchange would leak otherwise
+            .whenComplete((ignored, error) -> exchange.close());
+    }
+
+    private void respond(HttpExchange exchange, ServerJob job, boolean withResult) {
+        if (!withResult || job.getStatus() == ServerJob.Status.PENDING) {
+            EndpointUtils.respondWith(withResult ? 202 : 200, new JobResponse(job), exchange);
+        } else if (job.getStatus() == ServerJob.Status.FAILED) {
+            EndpointUtils.respondWithError(job.getError(), exchange);
+        } else {
+            var signedDocument = job.getSignedDocument();
+            var signer = signedDocument.getCertificate().getSubject().getPrincipal().toString();
+            var issuer = signedDocument.getCertificate().getIssuer().getPrincipal().toString();
+
+            var start = System.nanoTime();
+            if (job.shouldRespondWithBytes())
+                EndpointUtils.respondWithSignedDocumentBytes(signedDocument.getDocument(), signer, issuer, exchange);
+            else
+                EndpointUtils.respondWithSignedDocument(signedDocument.getDocument(), signer, issuer, exchange);
+            Metrics.record(Metrics.Phase.RESPONSE_ENCODE, Metrics.Labels.NONE, System.nanoTime() - start);
+        }
+    }
+
+    private void discard(HttpExchange exchange, String id) throws IOException {
+        var job = findJob(id);
+        if (job.getStatus() == ServerJob.Status.PENDING) {
+            // pending jobs are finished by the user, only results can be discarded
+            EndpointUtils.respondWith(409, new JobResponse(job), exchange);
+            return;
+        }
+
+        registry.remove(id);
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static long parseWaitSeconds(HttpExchange exchange) {
+        var query = exchange.getRequestURI().getQuery();
+        if (query == null)
+            return 0;
+
+        for (var parameter : query.split("&")) {
+            var pair = parameter.split("=", 2);
+            if (pair.length == 2 && pair[0].equals("wait")) {
+                try {
+                    return Long.parseLong(pair[1]);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,23 @@
+package digital.slovensko.autogram.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import digital.slovensko.autogram.core.Metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+public class MetricsEndpoint implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        var writer = new StringWriter();
+        Metrics.writePrometheus(writer);
+        var bytes = writer.toString().getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        try (var body = EndpointUtils.openResponseBody(exchange, 200, bytes.length)) {
+            body.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package digital.slovensko.autogram.server;
+
+import digital.slovensko.autogram.server.errors.MalformedBodyException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Minimal streaming multipart/form-data reader, part bodies are copied to the caller without buffering them whole
+public class MultipartReader {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_HEADERS_SIZE = 8192;
+
+    private final InputStream stream;
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private boolean isStarted = false;
+    private boolean isFinished = false;
+    private boolean isBodyConsumed = true;
+    private String name;
+    private String filename;
+    private String contentType;
+
+    public MultipartReader(InputStream stream, String boundary) {
+        this.stream = stream;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static String parseBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data"))
+            return null;
+
+        for (var parameter : contentType.split(";")) {
+            var pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].equalsIgnoreCase("boundary"))
+                return unquote(pair[1].trim());
+        }
+
+        return null;
+    }
+
+    public boolean nextPart() throws IOException {
+        if (isFinished)
+            return false;
+
+        if (!isBodyConsumed)
+            readBodyTo(OutputStream.nullOutputStream());
+
+        if (!isStarted) {
+            // the first delimiter has no leading CRLF
+            skipTo(delimiter, 2);
+            isStarted = true;
+        }
+
+        var first = nextByte();
+        var second = nextByte();
+        if (first == '-' && second == '-') {
+            isFinished = true;
+            return false;
+        }
+
+        if (first != '\r' || second != '\n')
+            throw malformed("Malformed multipart boundary");
+
+        readHeaders();
+        isBodyConsumed = false;
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void readBodyTo(OutputStream output) throws IOException {
+        var chunk = new byte[BUFFER_SIZE];
+        var length = 0;
+        var matched = 0;
+
+        while (matched < delimiter.length) {
+            var b = nextByte();
+            if (b == delimiter[matched]) {
+                matched++;
+                continue;
+            }
+
+            // delimiter bytes after the leading CR never start a new delimiter, so a mismatch only needs to
+            // release the partially matched bytes
+            for (var i = 0; i < matched; i++) {
+                if (length == chunk.length) {
+                    output.write(chunk, 0, length);
+                    length = 0;
+                }
+                chunk[length++] = delimiter[i];
+            }
+
+            matched = b == delimiter[0] ? 1 : 0;
+            if (matched == 0) {
+                if (length == chunk.length) {
+                    output.write(chunk, 0, length);
+                    length = 0;
+                }
+                chunk[length++] = (byte) b;
+            }
+        }
+
+        output.write(chunk, 0, length);
+        isBodyConsumed = true;
+    }
+
+    public String readBodyAsString() throws IOException {
+        var output = new ByteArrayOutputStream();
+        readBodyTo(output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    // Skips past sequence without its first offset bytes. A mismatch falls back to the longest part of the match
+    // that can still start the sequence, boundaries often start with dashes and a near miss may overlap the real one.
+    private void skipTo(byte[] sequence, int offset) throws IOException {
+        var pattern = Arrays.copyOfRange(sequence, offset, sequence.length);
+        var fallback = new int[pattern.length];
+        for (int i = 1, length = 0; i < pattern.length; i++) {
+            while (length > 0 && pattern[i] != pattern[length])
+                length = fallback[length - 1];
+            if (pattern[i] == pattern[length])
+                length++;
+            fallback[i] = length;
+        }
+
+        var matched = 0;
+        while (matched < pattern.length) {
+            var b = (byte) nextByte();
+            while (matched > 0 && b != pattern[matched])
+                matched = fallback[matched - 1];
+            if (b == pattern[matched])
+                matched++;
+        }
+    }
+
+    private void readHeaders() throws IOException {
+        name = null;
+        filename = null;
+        contentType = null;
+
+        var line = new ByteArrayOutputStream();
+        var total = 0;
+        while (true) {
+            var b = nextByte();
+            if (++total > MAX_HEADERS_SIZE)
+                throw malformed("Multipart headers are too large");
+
+            if (b != '\n') {
+                if (b != '\r')
+                    line.write(b);
+                continue;
+            }
+
+            if (line.size() == 0)
+                return;
+
+            parseHeader(line.toString(StandardCharsets.UTF_8));
+            line.reset();
+        }
+    }
+
+    private void parseHeader(String header) {
+        var separator = header.indexOf(':');
+        if (separator == -1)
+            return;
+
+        var headerName = header.substring(0, separator).trim();
+        var value = header.substring(separator + 1).trim();
+
+        if (headerName.equalsIgnoreCase("Content-Type")) {
+            contentType = value;
+        } else if (headerName.equalsIgnoreCase("Content-Disposition")) {
+            for (var parameter : value.split(";")) {
+                var pair = parameter.trim().split("=", 2);
+                if (pair.length != 2)
+                    continue;
+
+                if (pair[0].equalsIgnoreCase("name"))
+                    name = unquote(pair[1]);
+                else if (pair[0].equalsIgnoreCase("filename"))
+                    filename = unquote(pair[1]);
+            }
+        }
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            return value.substring(1, value.length() - 1);
+
+        return value;
+    }
+
+    private static MalformedBodyException malformed(String message) {
+        return new MalformedBodyException(message, null);
+    }
+
+    private int nextByte() throws IOException {
+        if (position == limit) {
+            limit = stream.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0)
+                throw malformed("Unexpected end of multipart body");
+        }
+
+        return buffer[position++] & 0xff;
+    }
+}
@@ -0,0 +1,59 @@
+package digital.slovensko.autogram.server;
+
+import digital.slovensko.autogram.core.PreparedSignature;
+import digital.slovensko.autogram.server.errors.TooManyJobsException;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static digital.slovensko.autogram.core.Configuration.getProperty;
+
+// Signatures prepared through /signatures wait here for the client to send the signature value
+public class PreparedSignatureRegistry {
+    public record Entry(String id, PreparedSignature signature, boolean respondWithBytes, Runnable onFinished,
+            long createdAt) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxCount;
+    private final long ttlNanos;
+
+    public PreparedSignatureRegistry(int maxCount, long ttlSeconds) {
+        this.maxCount = maxCount;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public static PreparedSignatureRegistry buildFromConfiguration() {
+        return new PreparedSignatureRegistry(
+            Integer.parseInt(getProperty("server.signatures.maxCount")),
+            Long.parseLong(getProperty("server.signatures.ttlSeconds")));
+    }
+
+    public synchronized Entry register(PreparedSignature signature, boolean respondWithBytes, Runnable onFinished)
+            throws TooManyJobsException {
+        evictExpired();
+        if (entries.size() >= maxCount)
+            throw new TooManyJobsException(maxCount);
+
+        var entry = new Entry(UUID.randomUUID().toString(), signature, respondWithBytes, onFinished, System.nanoTime());
+        entries.put(entry.id(), entry);
+
+        return entry;
+    }
+
+    // entries are single use, finalizing or discarding both take them out
+    public Entry remove(String id) {
+        evictExpired();
+        return entries.remove(id);
+    }
+
+    private void evictExpired() {
+        var now = System.nanoTime();
+        for (var entry : entries.values()) {
+            if (now - entry.createdAt() > ttlNanos && entries.remove(entry.id(), entry))
+                entry.onFinished().run();
+        }
+    }
+}
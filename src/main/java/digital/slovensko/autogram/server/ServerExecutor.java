@@ -0,0 +1,71 @@
+package digital.slovensko.autogram.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static digital.slovensko.autogram.core.Configuration.getProperty;
+
+// Fixed size pool with a bounded queue. When both are full the exchange runs on the dispatcher thread marked as
+// rejected and AdmissionFilter answers it with 503 right away, without running the handler.
+public class ServerExecutor extends ThreadPoolExecutor {
+    private static final ThreadLocal<Boolean> isRejected = ThreadLocal.withInitial(() -> false);
+
+    private final int queueLimit;
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public ServerExecutor(int threads, int queueLimit) {
+        super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueLimit), buildThreadFactory());
+        this.queueLimit = queueLimit;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler((task, executor) -> runRejected(task));
+    }
+
+    public static ServerExecutor buildFromConfiguration() {
+        return new ServerExecutor(
+            Math.max(1, Integer.parseInt(getProperty("server.executor.threads"))),
+            Math.max(1, Integer.parseInt(getProperty("server.executor.queueLimit"))));
+    }
+
+    private static ThreadFactory buildThreadFactory() {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, "autogram-server-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void runRejected(Runnable task) {
+        if (isShutdown())
+            throw new RejectedExecutionException("Server is stopping");
+
+        rejectedCount.increment();
+        isRejected.set(true);
+        try {
+            task.run();
+        } finally {
+            isRejected.set(false);
+        }
+    }
+
+    static boolean isCurrentExchangeRejected() {
+        return isRejected.get();
+    }
+
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
@@ -0,0 +1,83 @@
+package digital.slovensko.autogram.server;
+
+import digital.slovensko.autogram.core.Responder;
+import digital.slovensko.autogram.core.SignedDocument;
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.server.dto.ErrorResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+// Signing job submitted through /jobs, keeps the result until it is fetched or evicted instead of holding an exchange
+public class ServerJob extends Responder {
+    public enum Status {
+        PENDING, SIGNED, FAILED
+    }
+
+    private final String id;
+    private final boolean respondWithBytes;
+    private final Runnable onFinished;
+    private final CompletableFuture<ServerJob> finished = new CompletableFuture<>();
+    private volatile Status status = Status.PENDING;
+    private volatile SignedDocument signedDocument;
+    private volatile ErrorResponse error;
+    private volatile long finishedAt;
+
+    public ServerJob(String id, boolean respondWithBytes, Runnable onFinished) {
+        this.id = id;
+        this.respondWithBytes = respondWithBytes;
+        this.onFinished = onFinished;
+    }
+
+    @Override
+    public void onDocumentSigned(SignedDocument signedDocument) {
+        this.signedDocument = signedDocument;
+        finish(Status.SIGNED);
+    }
+
+    @Override
+    public void onDocumentSignFailed(AutogramException error) {
+        this.error = ErrorResponse.buildFromException(error);
+        finish(Status.FAILED);
+    }
+
+    private void finish(Status status) {
+        if (finished.isDone())
+            return;
+
+        try {
+            onFinished.run();
+        } finally {
+            finishedAt = System.nanoTime();
+            this.status = status;
+            finished.complete(this);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public SignedDocument getSignedDocument() {
+        return signedDocument;
+    }
+
+    public ErrorResponse getError() {
+        return error;
+    }
+
+    public boolean shouldRespondWithBytes() {
+        return respondWithBytes;
+    }
+
+    public CompletableFuture<ServerJob> onFinished() {
+        return finished;
+    }
+
+    boolean isExpired(long now, long ttlNanos) {
+        return status != Status.PENDING && now - finishedAt > ttlNanos;
+    }
+}
@@ -1,20 +1,25 @@
 package digital.slovensko.autogram.server;
 
 import com.sun.net.httpserver.HttpExchange;
+import digital.slovensko.autogram.core.Metrics;
 import digital.slovensko.autogram.core.Responder;
 import digital.slovensko.autogram.core.SignedDocument;
 import digital.slovensko.autogram.core.errors.AutogramException;
 import digital.slovensko.autogram.server.dto.ErrorResponse;
-import digital.slovensko.autogram.server.dto.SignResponse;
-
-import java.io.IOException;
-import java.util.Base64;
 
 public class ServerResponder extends Responder {
     private final HttpExchange exchange;
+    private final Runnable onFinished;
+    private final boolean respondWithBytes;
 
     public ServerResponder(HttpExchange exchange) {
+        this(exchange, () -> {}, false);
+    }
+
+    public ServerResponder(HttpExchange exchange, Runnable onFinished, boolean respondWithBytes) {
         this.exchange = exchange;
+        this.onFinished = onFinished;
+        this.respondWithBytes = respondWithBytes;
     }
 
     @Override
@@ -22,16 +27,24 @@ public class ServerResponder extends Responder {
         var signer = signedDocument.getCertificate().getSubject().getPrincipal().toString();
         var issuer = signedDocument.getCertificate().getIssuer().getPrincipal().toString();
 
+        var start = System.nanoTime();
         try {
-            var b64document = Base64.getEncoder().encodeToString(signedDocument.getDocument().openStream().readAllBytes());
-            EndpointUtils.respondWith(new SignResponse(b64document, signer, issuer), exchange);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            if (respondWithBytes)
+                EndpointUtils.respondWithSignedDocumentBytes(signedDocument.getDocument(), signer, issuer, exchange);
+            else
+                EndpointUtils.respondWithSignedDocument(signedDocument.getDocument(), signer, issuer, exchange);
+        } finally {
+            Metrics.record(Metrics.Phase.RESPONSE_ENCODE, Metrics.Labels.NONE, System.nanoTime() - start);
+            onFinished.run();
         }
     }
 
     @Override
     public void onDocumentSignFailed(AutogramException error) {
-        EndpointUtils.respondWithError(ErrorResponse.buildFromException(error), exchange);
+        try {
+            EndpointUtils.respondWithError(ErrorResponse.buildFromException(error), exchange);
+        } finally {
+            onFinished.run();
+        }
     }
 }
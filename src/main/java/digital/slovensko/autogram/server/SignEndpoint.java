@@ -1,13 +1,11 @@
 package digital.slovensko.autogram.server;
 
-import com.google.gson.JsonSyntaxException;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import digital.slovensko.autogram.core.Autogram;
 import digital.slovensko.autogram.core.SigningJob;
 import digital.slovensko.autogram.server.dto.ErrorResponse;
 import digital.slovensko.autogram.server.dto.SignRequestBody;
-import digital.slovensko.autogram.server.errors.MalformedBodyException;
 
 import java.io.IOException;
 
@@ -30,14 +28,22 @@ public class SignEndpoint implements HttpHandler {
             return;
         }
 
+        var isBinary = EndpointUtils.isMultipart(exchange);
+
+        SignRequestBody body;
+        try {
+            body = EndpointUtils.readSignRequestBody(exchange);
+        } catch (Exception e) {
+            EndpointUtils.respondWithError(ErrorResponse.buildFromException(e), exchange);
+            return;
+        }
+
         try {
-            var body = EndpointUtils.loadFromJsonExchange(exchange, SignRequestBody.class);
-            var job = new SigningJob(body.getDocument(), body.getParameters(), new ServerResponder(exchange));
+            var job = new SigningJob(body.getDocument(), body.getParameters(),
+                    new ServerResponder(exchange, body::discardDecodedContent, isBinary));
             autogram.sign(job);
-        } catch (JsonSyntaxException e) {
-            var response = ErrorResponse.buildFromException(new MalformedBodyException(e.getMessage(), e));
-            EndpointUtils.respondWithError(response, exchange);
         } catch (Exception e) {
+            body.discardDecodedContent();
             EndpointUtils.respondWithError(ErrorResponse.buildFromException(e), exchange);
         }
     }
@@ -0,0 +1,501 @@
+package digital.slovensko.autogram.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import digital.slovensko.autogram.server.dto.Document;
+import digital.slovensko.autogram.server.dto.ServerSigningParameters;
+import digital.slovensko.autogram.server.dto.SignRequestBody;
+import digital.slovensko.autogram.util.SpillingOutputStream;
+import eu.europa.esig.dss.model.CommonDocument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+public class SignRequestBodyReader {
+    private static final Gson gson = new Gson();
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private SignRequestBodyReader(InputStream stream) {
+        this.reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    public static SignRequestBody read(InputStream stream) throws IOException {
+        var item = new SignRequestBodyReader(stream).readItem();
+        try {
+            return item.toSignRequestBody(null, null);
+        } catch (RuntimeException | IOException e) {
+            item.discard();
+            throw e;
+        }
+    }
+
+    // Batch variant, {"parameters": ..., "payloadMimeType": ..., "documents": [SignRequestBody, ...]}
+    // where shared parameters and payloadMimeType are used for documents that do not have their own
+    public static List<SignRequestBody> readBatch(InputStream stream) throws IOException {
+        var reader = new SignRequestBodyReader(stream);
+        var items = new ArrayList<Item>();
+        ServerSigningParameters parameters = null;
+        String payloadMimeType = null;
+
+        try {
+            if (reader.nextNonWhitespace() != '{')
+                throw syntaxError("Expected request body to be an object");
+
+            String name;
+            for (var first = true; (name = reader.nextMemberName(first)) != null; first = false) {
+                switch (name) {
+                    case "documents" -> reader.readItems(items);
+                    case "parameters" -> parameters = gson.fromJson(reader.readRawValue(), ServerSigningParameters.class);
+                    case "payloadMimeType" -> payloadMimeType = reader.readNullableString();
+                    default -> reader.skipValue();
+                }
+            }
+
+            var bodies = new ArrayList<SignRequestBody>();
+            for (var item : items)
+                bodies.add(item.toSignRequestBody(parameters, payloadMimeType));
+
+            return bodies;
+        } catch (RuntimeException | IOException e) {
+            items.forEach(Item::discard);
+            throw e;
+        }
+    }
+
+    // Binary variant, the document is sent as a raw "document" part and parameters as a JSON "parameters" part.
+    // PayloadMimeType is taken from an optional "payloadMimeType" part or from the document part Content-Type.
+    public static SignRequestBody readMultipart(InputStream stream, String boundary) throws IOException {
+        var multipart = new MultipartReader(stream, boundary);
+        var hasDocument = false;
+        String filename = null;
+        String documentContentType = null;
+        CommonDocument content = null;
+        ServerSigningParameters parameters = null;
+        String payloadMimeType = null;
+        String[] certificateChain = null;
+
+        try {
+            while (multipart.nextPart()) {
+                var name = multipart.getName() != null ? multipart.getName() : "";
+                switch (name) {
+                    case "document" -> {
+                        if (content != null)
+                            SpillingOutputStream.discard(content);
+
+                        hasDocument = true;
+                        filename = multipart.getFilename();
+                        documentContentType = multipart.getContentType();
+                        var output = new SpillingOutputStream();
+                        multipart.readBodyTo(output);
+                        content = output.toDocument();
+                    }
+                    case "parameters" -> parameters = gson.fromJson(multipart.readBodyAsString(), ServerSigningParameters.class);
+                    case "payloadMimeType" -> payloadMimeType = multipart.readBodyAsString().trim();
+                    case "certificateChain" -> certificateChain = gson.fromJson(multipart.readBodyAsString(), String[].class);
+                    default -> {} // skipped by nextPart
+                }
+            }
+        } catch (RuntimeException | IOException e) {
+            if (content != null)
+                SpillingOutputStream.discard(content);
+
+            throw e;
+        }
+
+        if (payloadMimeType == null)
+            payloadMimeType = documentContentType;
+
+        if (!hasDocument)
+            return new SignRequestBody(null, parameters, payloadMimeType, certificateChain);
+
+        return new SignRequestBody(new Document(filename, content), parameters, payloadMimeType, certificateChain);
+    }
+
+    private void readItems(List<Item> items) throws IOException {
+        if (nextNonWhitespace() != '[')
+            throw syntaxError("Expected documents to be an array");
+
+        var c = nextNonWhitespace();
+        while (c != ']') {
+            if (c != '{')
+                throw syntaxError("Expected document to be an object");
+
+            position--;
+            items.add(readItem());
+
+            c = nextNonWhitespace();
+            if (c == ',') {
+                c = nextNonWhitespace();
+                if (c == ']')
+                    throw syntaxError("Expected document");
+            } else if (c != ']') {
+                throw syntaxError("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private Item readItem() throws IOException {
+        var item = new Item();
+        try {
+            if (nextNonWhitespace() != '{')
+                throw syntaxError("Expected request body to be an object");
+
+            String name;
+            for (var first = true; (name = nextMemberName(first)) != null; first = false) {
+                switch (name) {
+                    case "document" -> readDocument(item);
+                    case "parameters" -> item.parameters = gson.fromJson(readRawValue(), ServerSigningParameters.class);
+                    case "payloadMimeType" -> item.payloadMimeType = readNullableString();
+                    case "certificateChain" -> item.certificateChain = gson.fromJson(readRawValue(), String[].class);
+                    default -> skipValue();
+                }
+            }
+
+            return item;
+        } catch (RuntimeException | IOException e) {
+            item.discard();
+            throw e;
+        }
+    }
+
+    private static boolean isBase64(String payloadMimeType) {
+        return payloadMimeType != null && payloadMimeType.contains("base64");
+    }
+
+    private void readDocument(Item item) throws IOException {
+        var c = nextNonWhitespace();
+        if (c == 'n') {
+            expectLiteral("ull");
+            return;
+        }
+
+        if (c != '{')
+            throw syntaxError("Expected document to be an object");
+
+        item.hasDocument = true;
+        String name;
+        for (var first = true; (name = nextMemberName(first)) != null; first = false) {
+            switch (name) {
+                case "filename" -> item.filename = readNullableString();
+                case "content" -> readContent(item);
+                default -> skipValue();
+            }
+        }
+    }
+
+    private void readContent(Item item) throws IOException {
+        var c = nextNonWhitespace();
+        if (c == 'n') {
+            expectLiteral("ull");
+            return;
+        }
+
+        if (c != '"')
+            throw syntaxError("Expected document content to be a string");
+
+        item.discard();
+
+        // payloadMimeType usually comes after the document, decode afterwards in that case. Batch defaults are
+        // not used here, the item may still declare its own payloadMimeType after the content.
+        item.isContentDecoded = item.payloadMimeType != null;
+
+        var output = new SpillingOutputStream();
+        ContentSink sink = isBase64(item.payloadMimeType) ? new Base64DecodingSink(output) : new TextSink(output);
+        readStringTo(sink);
+        sink.close();
+
+        item.content = output.toDocument();
+    }
+
+    private static CommonDocument decodeBase64(CommonDocument encoded) throws IOException {
+        var output = new SpillingOutputStream();
+        try (var stream = Base64.getDecoder().wrap(encoded.openStream())) {
+            stream.transferTo(output);
+        } finally {
+            SpillingOutputStream.discard(encoded);
+        }
+
+        return output.toDocument();
+    }
+
+    private String readNullableString() throws IOException {
+        var c = nextNonWhitespace();
+        if (c == 'n') {
+            expectLiteral("ull");
+            return null;
+        }
+
+        if (c != '"')
+            throw syntaxError("Expected a string");
+
+        var builder = new StringBuilder();
+        readStringTo(builder::append);
+        return builder.toString();
+    }
+
+    private String nextMemberName(boolean first) throws IOException {
+        var c = nextNonWhitespace();
+        if (c == '}')
+            return null;
+
+        if (!first) {
+            if (c != ',')
+                throw syntaxError("Expected ',' or '}'");
+
+            c = nextNonWhitespace();
+        }
+
+        if (c != '"')
+            throw syntaxError("Expected member name");
+
+        var builder = new StringBuilder();
+        readStringTo(builder::append);
+
+        if (nextNonWhitespace() != ':')
+            throw syntaxError("Expected ':'");
+
+        return builder.toString();
+    }
+
+    private void readStringTo(CharSink sink) throws IOException {
+        while (true) {
+            var c = nextChar();
+            if (c == '"')
+                return;
+
+            if (c != '\\') {
+                sink.append(c);
+                continue;
+            }
+
+            c = nextChar();
+            switch (c) {
+                case '"', '\\', '/' -> sink.append(c);
+                case 'b' -> sink.append('\b');
+                case 'f' -> sink.append('\f');
+                case 'n' -> sink.append('\n');
+                case 'r' -> sink.append('\r');
+                case 't' -> sink.append('\t');
+                case 'u' -> {
+                    var code = 0;
+                    for (var i = 0; i < 4; i++) {
+                        var digit = Character.digit(nextChar(), 16);
+                        if (digit == -1)
+                            throw syntaxError("Invalid unicode escape sequence");
+
+                        code = code * 16 + digit;
+                    }
+                    sink.append((char) code);
+                }
+                default -> throw syntaxError("Invalid escape sequence");
+            }
+        }
+    }
+
+    private String readRawValue() throws IOException {
+        var builder = new StringBuilder();
+        copyValueTo(builder::append);
+        return builder.toString();
+    }
+
+    private void skipValue() throws IOException {
+        copyValueTo(c -> {});
+    }
+
+    private void copyValueTo(CharSink sink) throws IOException {
+        var c = nextNonWhitespace();
+        if (c != '{' && c != '[' && c != '"') {
+            sink.append(c);
+            while (!isEndOfLiteral(peekChar()))
+                sink.append(nextChar());
+
+            return;
+        }
+
+        var depth = 0;
+        while (true) {
+            sink.append(c);
+            if (c == '"') {
+                copyRawStringTo(sink);
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+
+            if (depth == 0)
+                return;
+
+            c = nextChar();
+        }
+    }
+
+    private void copyRawStringTo(CharSink sink) throws IOException {
+        while (true) {
+            var c = nextChar();
+            sink.append(c);
+            if (c == '\\')
+                sink.append(nextChar());
+            else if (c == '"')
+                return;
+        }
+    }
+
+    private static boolean isEndOfLiteral(int c) {
+        return c == -1 || c == ',' || c == '}' || c == ']' || Character.isWhitespace(c);
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (var i = 0; i < rest.length(); i++)
+            if (nextChar() != rest.charAt(i))
+                throw syntaxError("Unexpected literal");
+    }
+
+    private char nextNonWhitespace() throws IOException {
+        while (true) {
+            var c = nextChar();
+            if (!Character.isWhitespace(c))
+                return c;
+        }
+    }
+
+    private char nextChar() throws IOException {
+        if (!fillBuffer())
+            throw syntaxError("Unexpected end of request body");
+
+        return buffer[position++];
+    }
+
+    private int peekChar() throws IOException {
+        if (!fillBuffer())
+            return -1;
+
+        return buffer[position];
+    }
+
+    private boolean fillBuffer() throws IOException {
+        if (position < limit)
+            return true;
+
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        return limit > 0;
+    }
+
+    private static JsonSyntaxException syntaxError(String message) {
+        return new JsonSyntaxException(message);
+    }
+
+    private static class Item {
+        boolean hasDocument = false;
+        String filename;
+        CommonDocument content;
+        boolean isContentDecoded = false;
+        ServerSigningParameters parameters;
+        String payloadMimeType;
+        String[] certificateChain;
+
+        SignRequestBody toSignRequestBody(ServerSigningParameters defaultParameters, String defaultPayloadMimeType)
+                throws IOException {
+            var parameters = this.parameters != null ? this.parameters : defaultParameters;
+            var payloadMimeType = this.payloadMimeType != null ? this.payloadMimeType : defaultPayloadMimeType;
+
+            if (content != null && !isContentDecoded && isBase64(payloadMimeType)) {
+                content = decodeBase64(content);
+                isContentDecoded = true;
+            }
+
+            if (!hasDocument)
+                return new SignRequestBody(null, parameters, payloadMimeType, certificateChain);
+
+            return new SignRequestBody(new Document(filename, content), parameters, payloadMimeType, certificateChain);
+        }
+
+        void discard() {
+            if (content != null)
+                SpillingOutputStream.discard(content);
+
+            content = null;
+        }
+    }
+
+    private interface CharSink {
+        void append(char c) throws IOException;
+    }
+
+    private interface ContentSink extends CharSink {
+        void close() throws IOException;
+    }
+
+    private static class TextSink implements ContentSink {
+        private final Writer writer;
+        private final char[] chunk = new char[BUFFER_SIZE];
+        private int length = 0;
+
+        TextSink(OutputStream output) {
+            this.writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void append(char c) throws IOException {
+            if (length == chunk.length) {
+                writer.write(chunk, 0, length);
+                length = 0;
+            }
+
+            chunk[length++] = c;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.write(chunk, 0, length);
+            writer.close();
+        }
+    }
+
+    private static class Base64DecodingSink implements ContentSink {
+        private final OutputStream output;
+        // must stay a multiple of 4 so that every full chunk decodes on its own
+        private final byte[] chunk = new byte[BUFFER_SIZE];
+        private final byte[] decoded = new byte[BUFFER_SIZE / 4 * 3];
+        private int length = 0;
+
+        Base64DecodingSink(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void append(char c) throws IOException {
+            if (c > 0x7f)
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(c));
+
+            if (length == chunk.length) {
+                output.write(decoded, 0, Base64.getDecoder().decode(chunk, decoded));
+                length = 0;
+            }
+
+            chunk[length++] = (byte) c;
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.write(Base64.getDecoder().decode(Arrays.copyOf(chunk, length)));
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package digital.slovensko.autogram.server;
+
+import com.google.gson.JsonSyntaxException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import digital.slovensko.autogram.core.Autogram;
+import digital.slovensko.autogram.core.Responder;
+import digital.slovensko.autogram.core.SignedDocument;
+import digital.slovensko.autogram.core.SigningJob;
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.server.dto.ErrorResponse;
+import digital.slovensko.autogram.server.dto.FinalizeSignatureRequestBody;
+import digital.slovensko.autogram.server.dto.PreparedSignatureResponse;
+import digital.slovensko.autogram.server.errors.MalformedBodyException;
+import digital.slovensko.autogram.server.errors.SignatureNotFoundException;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.SignatureValue;
+
+import java.io.IOException;
+
+// Two-phase signing for clients that hold the key themselves. POST /signatures takes a /sign request with
+// a certificateChain and returns the data to sign, POST /signatures/{id} takes its signatureValue and responds
+// the same way as /sign. Nothing is shown to the user, the document is only processed.
+public class SignaturesEndpoint implements HttpHandler {
+    // prepared jobs respond through finalize, not through the job
+    private static final Responder NO_RESPONDER = new Responder() {
+        @Override
+        public void onDocumentSigned(SignedDocument signedDocument) {
+        }
+
+        @Override
+        public void onDocumentSignFailed(AutogramException error) {
+        }
+    };
+
+    private final Autogram autogram;
+    private final PreparedSignatureRegistry registry;
+
+    public SignaturesEndpoint(Autogram autogram, PreparedSignatureRegistry registry) {
+        this.autogram = autogram;
+        this.registry = registry;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, DELETE, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "Location");
+
+        // Allow preflight requests
+        if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+
+        // "" or "/{id}"
+        var subpath = exchange.getRequestURI().getPath().substring("/signatures".length());
+        var path = subpath.isEmpty() ? new String[0] : subpath.split("/");
+        var method = exchange.getRequestMethod().toUpperCase();
+
+        try {
+            if (path.length == 0 && method.equals("POST"))
+                prepare(exchange);
+            else if (path.length == 2 && method.equals("POST"))
+                finalizeSignature(exchange, path[1]);
+            else if (path.length == 2 && method.equals("DELETE"))
+                discard(exchange, path[1]);
+            else
+                exchange.sendResponseHeaders(path.length > 2 ? 404 : 405, -1);
+        } catch (Exception e) {
+            EndpointUtils.respondWithError(ErrorResponse.buildFromException(e), exchange);
+        }
+    }
+
+    private void prepare(HttpExchange exchange) throws IOException {
+        var isBinary = EndpointUtils.isMultipart(exchange);
+        var body = EndpointUtils.readSignRequestBody(exchange);
+
+        try {
+            var job = new SigningJob(body.getDocument(), body.getParameters(), NO_RESPONDER);
+            var prepared = autogram.prepareSignature(job, body.getCertificateChain());
+            var entry = registry.register(prepared, isBinary, body::discardDecodedContent);
+
+            exchange.getResponseHeaders().add("Location", "/signatures/" + entry.id());
+            EndpointUtils.respondWith(201, new PreparedSignatureResponse(entry.id(), prepared), exchange);
+        } catch (DSSException e) {
+            body.discardDecodedContent();
+            throw AutogramException.createFromDSSException(e);
+        } catch (Exception e) {
+            body.discardDecodedContent();
+            throw e;
+        }
+    }
+
+    private void finalizeSignature(HttpExchange exchange, String id) throws IOException {
+        FinalizeSignatureRequestBody body;
+        try {
+            body = EndpointUtils.loadFromJsonExchange(exchange, FinalizeSignatureRequestBody.class);
+        } catch (JsonSyntaxException e) {
+            throw new MalformedBodyException(e.getMessage(), e);
+        }
+
+        if (body == null)
+            throw new MalformedBodyException("Request body is empty", null);
+
+        var signatureValueBytes = body.getSignatureValue();
+        var entry = findEntry(id);
+        var prepared = entry.signature();
+
+        SignedDocument signedDocument;
+        try {
+            var signatureValue = new SignatureValue(prepared.getSignatureAlgorithm(), signatureValueBytes);
+            signedDocument = prepared.getJob().finalizeSignature(prepared, signatureValue);
+        } catch (DSSException e) {
+            entry.onFinished().run();
+            throw AutogramException.createFromDSSException(e);
+        } catch (Exception e) {
+            entry.onFinished().run();
+            throw e;
+        }
+
+        new ServerResponder(exchange, entry.onFinished(), entry.respondWithBytes()).onDocumentSigned(signedDocument);
+    }
+
+    private void discard(HttpExchange exchange, String id) throws IOException {
+        findEntry(id).onFinished().run();
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private PreparedSignatureRegistry.Entry findEntry(String id) throws SignatureNotFoundException {
+        var entry = registry.remove(id);
+        if (entry == null)
+            throw new SignatureNotFoundException(id);
+
+        return entry;
+    }
+}
@@ -1,8 +1,11 @@
 package digital.slovensko.autogram.server.dto;
 
+import eu.europa.esig.dss.model.CommonDocument;
+
 public class Document {
     private String filename;
     private String content;
+    private transient CommonDocument decodedContent;
 
     public Document(String content) {
         this.content = content;
@@ -13,6 +16,11 @@ public class Document {
         this.content = content;
     }
 
+    public Document(String filename, CommonDocument decodedContent) {
+        this.filename = filename;
+        this.decodedContent = decodedContent;
+    }
+
     public String getFilename() {
         return filename;
     }
@@ -20,4 +28,8 @@ public class Document {
     public String getContent() {
         return content;
     }
+
+    public CommonDocument getDecodedContent() {
+        return decodedContent;
+    }
 }
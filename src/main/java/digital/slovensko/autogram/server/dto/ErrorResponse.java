@@ -40,6 +40,11 @@ public class ErrorResponse {
             case "UnsupportedSignatureLevelExceptionError" -> new ErrorResponse(422, "UNSUPPORTED_SIGNATURE_LEVEL", (AutogramException) e);
             case "RequestValidationException" -> new ErrorResponse(422, "UNPROCESSABLE_INPUT", (AutogramException) e);
             case "MalformedBodyException" -> new ErrorResponse(400, "MALFORMED_INPUT", (AutogramException) e);
+            case "JobNotFoundException" -> new ErrorResponse(404, "JOB_NOT_FOUND", (AutogramException) e);
+            case "SignatureNotFoundException" -> new ErrorResponse(404, "SIGNATURE_NOT_FOUND", (AutogramException) e);
+            case "TooManyJobsException" -> new ErrorResponse(429, "TOO_MANY_JOBS", (AutogramException) e);
+            case "UnsupportedContentEncodingException" -> new ErrorResponse(415, "UNSUPPORTED_CONTENT_ENCODING", (AutogramException) e);
+            case "ServerBusyException" -> new ErrorResponse(503, "SERVER_BUSY", (AutogramException) e);
             case "AutogramException" -> new ErrorResponse(502, "SIGNING_FAILED", (AutogramException) e);
             default -> new ErrorResponse(500, "INTERNAL_ERROR", "Unexpected exception signing document", e.getMessage());
         };
@@ -0,0 +1,24 @@
+package digital.slovensko.autogram.server.dto;
+
+import digital.slovensko.autogram.server.errors.RequestValidationException;
+
+import java.util.Base64;
+
+public class FinalizeSignatureRequestBody {
+    private final String signatureValue;
+
+    public FinalizeSignatureRequestBody(String signatureValue) {
+        this.signatureValue = signatureValue;
+    }
+
+    public byte[] getSignatureValue() throws RequestValidationException {
+        if (signatureValue == null)
+            throw new RequestValidationException("SignatureValue is required", "");
+
+        try {
+            return Base64.getDecoder().decode(signatureValue);
+        } catch (IllegalArgumentException e) {
+            throw new RequestValidationException("SignatureValue is invalid", "SignatureValue must be Base64 encoded");
+        }
+    }
+}
@@ -6,10 +6,16 @@ import static java.util.Objects.requireNonNullElse;
 public class InfoResponse {
     private final String version;
     private final String status;
+    private final ServerLoad load;
 
     public InfoResponse(String version, String status) {
+        this(version, status, null);
+    }
+
+    public InfoResponse(String version, String status, ServerLoad load) {
         this.version = version;
         this.status = status;
+        this.load = load;
     }
 
     public static String getStatus() {
@@ -0,0 +1,17 @@
+package digital.slovensko.autogram.server.dto;
+
+import digital.slovensko.autogram.server.ServerJob;
+
+public class JobResponse {
+    private final String id;
+    private final String status;
+    private final Integer errorStatusCode;
+    private final ErrorResponseBody error;
+
+    public JobResponse(ServerJob job) {
+        this.id = job.getId();
+        this.status = job.getStatus().name();
+        this.errorStatusCode = job.getError() != null ? job.getError().getStatusCode() : null;
+        this.error = job.getError() != null ? job.getError().getBody() : null;
+    }
+}
@@ -0,0 +1,19 @@
+package digital.slovensko.autogram.server.dto;
+
+import digital.slovensko.autogram.core.PreparedSignature;
+
+import java.util.Base64;
+
+public class PreparedSignatureResponse {
+    private final String id;
+    private final String dataToSign;
+    private final String digestAlgorithm;
+    private final String signatureAlgorithm;
+
+    public PreparedSignatureResponse(String id, PreparedSignature signature) {
+        this.id = id;
+        this.dataToSign = Base64.getEncoder().encodeToString(signature.getDataToSign().getBytes());
+        this.digestAlgorithm = signature.getDigestAlgorithm().name();
+        this.signatureAlgorithm = signature.getSignatureAlgorithm() != null ? signature.getSignatureAlgorithm().name() : null;
+    }
+}
@@ -0,0 +1,40 @@
+package digital.slovensko.autogram.server.dto;
+
+import digital.slovensko.autogram.server.AdmissionFilter;
+import digital.slovensko.autogram.server.ServerExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ServerLoad {
+    private final int threads;
+    private final int activeCount;
+    private final int queueDepth;
+    private final int queueLimit;
+    private final long rejectedCount;
+    private final Map<String, EndpointLoad> endpoints = new LinkedHashMap<>();
+
+    public ServerLoad(ServerExecutor executor, List<AdmissionFilter> filters) {
+        this.threads = executor.getMaximumPoolSize();
+        this.activeCount = executor.getActiveCount();
+        this.queueDepth = executor.getQueueDepth();
+        this.queueLimit = executor.getQueueLimit();
+        this.rejectedCount = executor.getRejectedCount();
+
+        for (var filter : filters)
+            endpoints.put(filter.getEndpoint(), new EndpointLoad(filter));
+    }
+
+    private static class EndpointLoad {
+        private final int activeCount;
+        private final Integer limit;
+        private final long rejectedCount;
+
+        EndpointLoad(AdmissionFilter filter) {
+            this.activeCount = filter.getActiveCount();
+            this.limit = filter.getLimit() > 0 ? filter.getLimit() : null;
+            this.rejectedCount = filter.getRejectedCount();
+        }
+    }
+}
@@ -3,31 +3,54 @@ package digital.slovensko.autogram.server.dto;
 import java.util.Base64;
 
 import digital.slovensko.autogram.core.AutogramMimeType;
+import digital.slovensko.autogram.core.Metrics;
 import digital.slovensko.autogram.core.SigningParameters;
 import digital.slovensko.autogram.server.errors.RequestValidationException;
+import digital.slovensko.autogram.util.SpillingOutputStream;
+import eu.europa.esig.dss.model.CommonDocument;
 import eu.europa.esig.dss.model.InMemoryDocument;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.DSSUtils;
 
 public class SignRequestBody {
     private final Document document;
     private final ServerSigningParameters parameters;
     private final String payloadMimeType;
+    private final String[] certificateChain;
 
     public SignRequestBody(Document document, ServerSigningParameters parameters, String payloadMimeType) {
+        this(document, parameters, payloadMimeType, null);
+    }
+
+    public SignRequestBody(Document document, ServerSigningParameters parameters, String payloadMimeType,
+            String[] certificateChain) {
         this.document = document;
         this.parameters = parameters;
         this.payloadMimeType = payloadMimeType;
+        this.certificateChain = certificateChain;
     }
 
-    public InMemoryDocument getDocument() throws RequestValidationException {
+    public CommonDocument getDocument() throws RequestValidationException {
         if (payloadMimeType == null)
             throw new RequestValidationException("PayloadMimeType is required", "");
 
         if (document == null)
             throw new RequestValidationException("Document is required", "");
 
-        if (document.getContent() == null)
+        if (document.getContent() == null && document.getDecodedContent() == null)
             throw new RequestValidationException("Document.Content is required", "");
 
+        var filename = document.getFilename();
+        var mimetype = AutogramMimeType.fromMimeTypeString(payloadMimeType.split(";")[0]);
+
+        if (document.getDecodedContent() != null) {
+            var decoded = document.getDecodedContent();
+            decoded.setName(filename);
+            decoded.setMimeType(mimetype);
+
+            return decoded;
+        }
+
         byte[] content;
         if (isBase64()) {
             content = Base64.getDecoder().decode(document.getContent());
@@ -35,9 +58,6 @@ public class SignRequestBody {
             content = document.getContent().getBytes();
         }
 
-        var filename = document.getFilename();
-        var mimetype = AutogramMimeType.fromMimeTypeString(payloadMimeType.split(";")[0]);
-
         return new InMemoryDocument(content, filename, mimetype);
     }
 
@@ -45,9 +65,47 @@ public class SignRequestBody {
         if (parameters == null)
             throw new RequestValidationException("Parameters are required", "");
 
-        parameters.validate(getDocument().getMimeType());
+        var mimeType = getDocument().getMimeType();
+        var start = System.nanoTime();
+        parameters.validate(mimeType);
+        var signingParameters = parameters.getSigningParameters(isBase64());
+        validateTransformation(signingParameters);
+        Metrics.record(Metrics.Phase.VALIDATE, Metrics.Labels.of(signingParameters, null), System.nanoTime() - start);
+
+        return signingParameters;
+    }
+
+    // Base64 DER certificates, the signing certificate first. Only used when the client signs on its own.
+    public CertificateToken[] getCertificateChain() throws RequestValidationException {
+        if (certificateChain == null || certificateChain.length == 0)
+            throw new RequestValidationException("CertificateChain is required", "");
+
+        var chain = new CertificateToken[certificateChain.length];
+        for (var i = 0; i < certificateChain.length; i++) {
+            try {
+                chain[i] = DSSUtils.loadCertificate(Base64.getDecoder().decode(certificateChain[i]));
+            } catch (RuntimeException e) {
+                throw new RequestValidationException("CertificateChain is invalid",
+                        "CertificateChain[" + i + "] is not a Base64 encoded DER certificate");
+            }
+        }
+
+        return chain;
+    }
+
+    // The output method decides the visualization and the XDC media type, a stylesheet that does not parse or
+    // has an unsupported one would only fail once the user wants to sign
+    private static void validateTransformation(SigningParameters signingParameters) throws RequestValidationException {
+        try {
+            signingParameters.getTransformationOutputMimeType();
+        } catch (RuntimeException e) {
+            throw new RequestValidationException("Parameters.Transformation is invalid", e.getMessage());
+        }
+    }
 
-        return parameters.getSigningParameters(isBase64());
+    public void discardDecodedContent() {
+        if (document != null && document.getDecodedContent() != null)
+            SpillingOutputStream.discard(document.getDecodedContent());
     }
 
     private boolean isBase64() {
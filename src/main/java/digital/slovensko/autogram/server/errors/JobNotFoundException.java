@@ -0,0 +1,9 @@
+package digital.slovensko.autogram.server.errors;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+
+public class JobNotFoundException extends AutogramException {
+    public JobNotFoundException(String id) {
+        super("Job not found", "Job " + id + " does not exist", "Finished jobs are discarded after a while, submit the document again");
+    }
+}
@@ -0,0 +1,9 @@
+package digital.slovensko.autogram.server.errors;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+
+public class ServerBusyException extends AutogramException {
+    public ServerBusyException() {
+        super("Server is busy", "Too many requests are being processed", "Retry the request after the time in the Retry-After header");
+    }
+}
@@ -0,0 +1,10 @@
+package digital.slovensko.autogram.server.errors;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+
+public class SignatureNotFoundException extends AutogramException {
+    public SignatureNotFoundException(String id) {
+        super("Signature not found", "Prepared signature " + id + " does not exist",
+                "Prepared signatures can be finalized once and are discarded after a while, prepare the signature again");
+    }
+}
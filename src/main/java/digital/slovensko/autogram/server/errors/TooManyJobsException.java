@@ -0,0 +1,10 @@
+package digital.slovensko.autogram.server.errors;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+
+public class TooManyJobsException extends AutogramException {
+    public TooManyJobsException(int maxCount) {
+        super("Too many jobs", "Too many signing jobs are waiting",
+                "At most " + maxCount + " jobs can be pending or waiting for their result to be fetched");
+    }
+}
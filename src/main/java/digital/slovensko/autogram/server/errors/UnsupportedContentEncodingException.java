@@ -0,0 +1,10 @@
+package digital.slovensko.autogram.server.errors;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+
+public class UnsupportedContentEncodingException extends AutogramException {
+    public UnsupportedContentEncodingException(String encoding) {
+        super("Unsupported content encoding", "Content-Encoding " + encoding + " is not supported",
+                "Please send the request body uncompressed or use gzip or deflate");
+    }
+}
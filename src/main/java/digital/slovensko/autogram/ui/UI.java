@@ -13,6 +13,8 @@ import java.util.function.Consumer;
 public interface UI {
     void startSigning(SigningJob job, Autogram autogram);
 
+    void startBatchSigning(BatchSigningJob batch, Autogram autogram);
+
     void pickTokenDriverAndThen(List<TokenDriver> drivers, Consumer<TokenDriver> callback);
 
     void requestPasswordAndThen(TokenDriver driver, Consumer<char[]> callback);
@@ -25,6 +27,8 @@ public interface UI {
 
     void onSigningFailed(AutogramException e);
 
+    void onBatchSigningDone(BatchSigningJob batch, List<AutogramException> errors);
+
     void onDocumentSaved(File targetFile);
 
     void onWorkThreadDo(Runnable callback);
@@ -30,6 +30,19 @@ public class CliUI implements UI {
 
     }
 
+    @Override
+    public void startBatchSigning(BatchSigningJob batch, Autogram autogram) {
+        System.out.println("Starting batch signing of " + batch.size() + " documents");
+        if (activeKey == null) {
+            autogram.pickSigningKeyAndThen(key -> {
+                activeKey = key;
+                autogram.sign(batch, activeKey);
+            });
+        } else {
+            autogram.sign(batch, activeKey);
+        }
+    }
+
     @Override
     public void pickTokenDriverAndThen(List<TokenDriver> drivers, Consumer<TokenDriver> callback) {
         TokenDriver pickedDriver;
@@ -89,6 +102,12 @@ public class CliUI implements UI {
         System.err.println(e);
     }
 
+    @Override
+    public void onBatchSigningDone(BatchSigningJob batch, List<AutogramException> errors) {
+        System.out.println("Batch signed, " + (batch.size() - errors.size()) + "/" + batch.size() + " documents succeeded");
+        errors.forEach(System.err::println);
+    }
+
     @Override
     public void onDocumentSaved(File filename) {
 
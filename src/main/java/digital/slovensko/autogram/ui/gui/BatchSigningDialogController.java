@@ -0,0 +1,106 @@
+package digital.slovensko.autogram.ui.gui;
+
+import digital.slovensko.autogram.core.Autogram;
+import digital.slovensko.autogram.core.BatchSigningJob;
+import digital.slovensko.autogram.core.SigningKey;
+import digital.slovensko.autogram.util.DSSUtils;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.stage.Stage;
+
+public class BatchSigningDialogController implements SuppressedFocusController {
+    private final GUI gui;
+    private final BatchSigningJob batch;
+    private final Autogram autogram;
+    private boolean isSigning;
+
+    @FXML
+    VBox mainBox;
+    @FXML
+    Text headingText;
+    @FXML
+    ListView<String> documentList;
+    @FXML
+    public Button mainButton;
+    @FXML
+    public Button changeKeyButton;
+
+    public BatchSigningDialogController(BatchSigningJob batch, Autogram autogram, GUI gui) {
+        this.batch = batch;
+        this.gui = gui;
+        this.autogram = autogram;
+    }
+
+    public void initialize() {
+        refreshSigningKey();
+        headingText.setText("Dokumenty na podpísanie (" + batch.size() + ")");
+
+        var jobs = batch.getJobs();
+        for (var i = 0; i < jobs.size(); i++) {
+            var name = jobs.get(i).getDocument().getName();
+            documentList.getItems().add(name != null ? name : "Dokument " + (i + 1));
+        }
+    }
+
+    public void onMainButtonPressed(ActionEvent event) {
+        var signingKey = gui.getActiveSigningKey();
+        if (signingKey == null) {
+            autogram.pickSigningKeyAndThen(gui::setActiveSigningKey);
+        } else {
+            isSigning = true;
+            gui.disableSigning();
+            getNodeForLoosingFocus().requestFocus();
+            autogram.sign(batch, signingKey);
+        }
+    }
+
+    public void onChangeKeyButtonPressed(ActionEvent event) {
+        gui.resetSigningKey();
+        autogram.pickSigningKeyAndThen(gui::setActiveSigningKey);
+    }
+
+    public void refreshSigningKey() {
+        mainButton.setDisable(false);
+        SigningKey key = gui.getActiveSigningKey();
+        if (key == null) {
+            mainButton.setText("Vybrať podpisový certifikát");
+            mainButton.getStyleClass().add("autogram-button--secondary");
+            changeKeyButton.setVisible(false);
+        } else {
+            mainButton.setText("Podpísať všetky ako " + DSSUtils.parseCN(key.getCertificate().getSubject().getRFC2253()));
+            mainButton.getStyleClass().removeIf(style -> style.equals("autogram-button--secondary"));
+            changeKeyButton.setVisible(true);
+        }
+    }
+
+    public boolean isSigning() {
+        return isSigning;
+    }
+
+    public void close() {
+        var window = mainButton.getScene().getRoot().getScene().getWindow();
+        if (window instanceof Stage) {
+            ((Stage) window).close();
+        }
+    }
+
+    public void disableKeyPicking() {
+        mainButton.setText("Načítavam certifikáty...");
+        mainButton.setDisable(true);
+    }
+
+    public void disableSigning() {
+        mainButton.setText("Prebieha podpisovanie...");
+        mainButton.setDisable(true);
+    }
+
+    @Override
+    public Node getNodeForLoosingFocus() {
+        return mainBox;
+    }
+}
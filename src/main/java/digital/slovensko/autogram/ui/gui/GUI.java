@@ -21,6 +21,7 @@ import java.util.function.Consumer;
 
 public class GUI implements UI {
     private final Map<SigningJob, SigningDialogController> jobControllers = new WeakHashMap<>();
+    private final Map<BatchSigningJob, BatchSigningDialogController> batchControllers = new WeakHashMap<>();
     private SigningKey activeKey;
     private final HostServices hostServices;
 
@@ -46,6 +47,30 @@ public class GUI implements UI {
         GUIUtils.setUserFriendlyPosition(stage);
     }
 
+    @Override
+    public void startBatchSigning(BatchSigningJob batch, Autogram autogram) {
+        var controller = new BatchSigningDialogController(batch, autogram, this);
+        batchControllers.put(batch, controller);
+
+        var root = GUIUtils.loadFXML(controller, "batch-signing-dialog.fxml");
+
+        var stage = new Stage();
+        stage.setTitle("Podpisovanie dokumentov");
+        stage.setScene(new Scene(root));
+        stage.setOnCloseRequest(e -> {
+            // once the token has the batch, every document gets its own result
+            if (controller.isSigning())
+                e.consume();
+            else
+                cancelBatch(batch);
+        });
+
+        stage.sizeToScene();
+        GUIUtils.suppressDefaultFocus(stage, controller);
+        GUIUtils.showOnTop(stage);
+        GUIUtils.setUserFriendlyPosition(stage);
+    }
+
     @Override
     public void pickTokenDriverAndThen(List<TokenDriver> drivers, Consumer<TokenDriver> callback) {
         disableKeyPicking();
@@ -115,6 +140,7 @@ public class GUI implements UI {
 
     private void refreshKeyOnAllJobs() {
         jobControllers.values().forEach(SigningDialogController::refreshSigningKey);
+        batchControllers.values().forEach(BatchSigningDialogController::refreshSigningKey);
     }
 
     private void showError(AutogramException e) {
@@ -179,6 +205,7 @@ public class GUI implements UI {
 
     private void disableKeyPicking() {
         jobControllers.values().forEach(SigningDialogController::disableKeyPicking);
+        batchControllers.values().forEach(BatchSigningDialogController::disableKeyPicking);
     }
 
     @Override
@@ -187,6 +214,11 @@ public class GUI implements UI {
         resetSigningKey();
     }
 
+    // the document can still be signed, only the dialog shows no visualization
+    public void onVisualizationFailed(AutogramException e) {
+        showError(e);
+    }
+
     @Override
     public void onSigningSuccess(SigningJob job) {
         jobControllers.get(job).close();
@@ -203,6 +235,19 @@ public class GUI implements UI {
         }
     }
 
+    @Override
+    public void onBatchSigningDone(BatchSigningJob batch, List<AutogramException> errors) {
+        var controller = batchControllers.remove(batch);
+        if (controller != null)
+            controller.close();
+
+        if (errors.isEmpty()) {
+            refreshKeyOnAllJobs();
+        } else {
+            onSigningFailed(errors.get(0));
+        }
+    }
+
     @Override
     public void onDocumentSaved(File targetFile) {
         var controller = new SigningSuccessDialogController(targetFile, hostServices);
@@ -226,7 +271,11 @@ public class GUI implements UI {
         Platform.runLater(callback);
     }
 
+    // A key whose token session was closed, e.g. because the card was removed, has to be picked again
     public SigningKey getActiveSigningKey() {
+        if (activeKey != null && activeKey.isClosed())
+            resetSigningKey();
+
         return activeKey;
     }
 
@@ -238,6 +287,7 @@ public class GUI implements UI {
 
     public void disableSigning() {
         jobControllers.values().forEach(SigningDialogController::disableSigning);
+        batchControllers.values().forEach(BatchSigningDialogController::disableSigning);
     }
 
     public void resetSigningKey() {
@@ -249,6 +299,16 @@ public class GUI implements UI {
         jobControllers.get(job).close();
     }
 
+    public void cancelBatch(BatchSigningJob batch) {
+        var controller = batchControllers.get(batch);
+        if (controller == null || controller.isSigning())
+            return;
+
+        batchControllers.remove(batch);
+        batch.onBatchSignFailed(new SigningCanceledByUserException());
+        controller.close();
+    }
+
     public void focusJob(SigningJob job) {
         getJobWindow(job).requestFocus();
     }
@@ -30,7 +30,10 @@ public class GUIApp extends Application {
         server.start();
 
         windowStage.setOnCloseRequest(event -> {
-            new Thread(server::stop).start();
+            new Thread(() -> {
+                server.stop();
+                autogram.shutdown();
+            }).start();
 
             Platform.exit();
         });
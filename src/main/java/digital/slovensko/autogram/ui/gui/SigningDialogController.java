@@ -3,6 +3,7 @@ package digital.slovensko.autogram.ui.gui;
 import digital.slovensko.autogram.core.Autogram;
 import digital.slovensko.autogram.core.SigningJob;
 import digital.slovensko.autogram.core.SigningKey;
+import digital.slovensko.autogram.core.errors.VisualizationFailedException;
 import digital.slovensko.autogram.util.DSSUtils;
 import javafx.concurrent.Worker;
 import javafx.event.ActionEvent;
@@ -113,19 +114,37 @@ public class SigningDialogController implements SuppressedFocusController {
     }
 
     private void showPlainTextVisualization() {
+        String text;
+        try {
+            text = signingJob.getDocumentAsPlainText();
+        } catch (VisualizationFailedException e) {
+            gui.onVisualizationFailed(e);
+            showUnsupportedVisualization();
+            return;
+        }
+
         plainTextArea.addEventFilter(ContextMenuEvent.CONTEXT_MENU_REQUESTED, Event::consume);
-        plainTextArea.setText(signingJob.getDocumentAsPlainText());
+        plainTextArea.setText(text);
         plainTextArea.setVisible(true);
         plainTextArea.setManaged(true);
     }
 
     private void showHTMLVisualization() {
+        String html;
+        try {
+            html = signingJob.getDocumentAsHTML();
+        } catch (VisualizationFailedException e) {
+            gui.onVisualizationFailed(e);
+            showUnsupportedVisualization();
+            return;
+        }
+
         webView.setContextMenuEnabled(false);
         webView.getEngine().setJavaScriptEnabled(false);
         var engine = webView.getEngine();
         engine.getLoadWorker().stateProperty().addListener((observable, oldState, newState) -> {
             if (newState == Worker.State.SUCCEEDED) {
-                engine.getDocument().getElementById("frame").setAttribute("srcdoc", signingJob.getDocumentAsHTML());
+                engine.getDocument().getElementById("frame").setAttribute("srcdoc", html);
             }
         });
         engine.load(getClass().getResource("visualization-html.html").toExternalForm());
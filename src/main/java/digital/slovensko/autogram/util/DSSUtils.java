@@ -1,5 +1,6 @@
 package digital.slovensko.autogram.util;
 
+import digital.slovensko.autogram.core.TokenKeyEntry;
 import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
 
 import javax.naming.InvalidNameException;
@@ -27,6 +28,9 @@ public class DSSUtils {
         if (key.getCertificate().getIssuer() != null) {
             out += "\n\n" + key.getCertificate().getIssuer().getPrincipal().toString();
         }
+        if (key instanceof TokenKeyEntry entry) {
+            out += "\n\n" + entry.getDriverName();
+        }
         return out;
     }
 }
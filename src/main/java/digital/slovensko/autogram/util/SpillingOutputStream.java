@@ -0,0 +1,83 @@
+package digital.slovensko.autogram.util;
+
+import eu.europa.esig.dss.model.CommonDocument;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class SpillingOutputStream extends OutputStream {
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private final int threshold;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private File file;
+    private OutputStream fileStream;
+
+    public SpillingOutputStream() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public SpillingOutputStream(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        getStreamFor(1).write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        getStreamFor(len).write(b, off, len);
+    }
+
+    private OutputStream getStreamFor(int length) throws IOException {
+        if (memory != null && memory.size() + length > threshold)
+            spill();
+
+        return memory != null ? memory : fileStream;
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("autogram-", ".tmp");
+        fileStream = new BufferedOutputStream(new FileOutputStream(file));
+        memory.writeTo(fileStream);
+        memory = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileStream != null)
+            fileStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileStream != null)
+            fileStream.close();
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    public CommonDocument toDocument() throws IOException {
+        close();
+        if (file != null)
+            return new FileDocument(file);
+
+        return new InMemoryDocument(memory.toByteArray());
+    }
+
+    public static void discard(DSSDocument document) {
+        if (document instanceof FileDocument fileDocument && !fileDocument.getFile().delete())
+            fileDocument.getFile().deleteOnExit();
+    }
+}
@@ -0,0 +1,26 @@
+package digital.slovensko.autogram.util;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+// Per user directories following the conventions of each platform
+public class UserDirectories {
+    private static final String NAME = "Autogram";
+
+    public static Path getConfigDirectory() {
+        var home = System.getProperty("user.home");
+        var os = OperatingSystem.current();
+        if (os == OperatingSystem.WINDOWS)
+            return Path.of(getEnv("APPDATA", Path.of(home, "AppData", "Roaming").toString()), NAME);
+
+        if (os == OperatingSystem.MAC)
+            return Path.of(home, "Library", "Application Support", NAME);
+
+        return Path.of(getEnv("XDG_CONFIG_HOME", Path.of(home, ".config").toString()), NAME.toLowerCase(Locale.ROOT));
+    }
+
+    private static String getEnv(String name, String fallback) {
+        var value = System.getenv(name);
+        return value != null && !value.isBlank() ? value : fallback;
+    }
+}
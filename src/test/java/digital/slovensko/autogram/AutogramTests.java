@@ -1,6 +1,7 @@
 package digital.slovensko.autogram;
 
 import digital.slovensko.autogram.core.Autogram;
+import digital.slovensko.autogram.core.BatchSigningJob;
 import digital.slovensko.autogram.core.Responder;
 import digital.slovensko.autogram.core.SigningJob;
 import digital.slovensko.autogram.core.SigningParameters;
@@ -41,6 +42,21 @@ class AutogramTests {
         verify(responder).onDocumentSigned(any());
     }
 
+    @Test
+    void testBatchSignHappyScenario() {
+        var newUI = new FakeUI();
+        var autogram = new Autogram(newUI);
+
+        var responders = List.of(mock(Responder.class), mock(Responder.class), mock(Responder.class));
+        var jobs = responders.stream().map(responder -> new SigningJob(new FileDocument("pom.xml"),
+                SigningParameters.buildForASiCWithXAdES("pom.xml"), responder)).toList();
+
+        autogram.pickSigningKeyAndThen(key
+        -> autogram.sign(new BatchSigningJob(jobs), key));
+
+        responders.forEach(responder -> verify(responder).onDocumentSigned(any()));
+    }
+
     @Test
     void testSignCertificatePickFailed() {
 
@@ -73,6 +89,11 @@ class AutogramTests {
 
         }
 
+        @Override
+        public void startBatchSigning(BatchSigningJob batch, Autogram autogram) {
+
+        }
+
         @Override
         public void pickTokenDriverAndThen(List<TokenDriver> drivers, Consumer<TokenDriver> callback) {
             callback.accept(new FakeTokenDriver("fake"));
@@ -123,6 +144,11 @@ class AutogramTests {
 
         }
 
+        @Override
+        public void onBatchSigningDone(BatchSigningJob batch, List<AutogramException> errors) {
+
+        }
+
         @Override
         public void onDocumentSaved(File targetFile) {
 
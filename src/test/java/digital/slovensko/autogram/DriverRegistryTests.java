@@ -0,0 +1,130 @@
+package digital.slovensko.autogram;
+
+import digital.slovensko.autogram.core.errors.AutogramException;
+import digital.slovensko.autogram.core.errors.DriverRegistryException;
+import digital.slovensko.autogram.drivers.DriverRegistry;
+import digital.slovensko.autogram.drivers.PKCS11TokenDriver;
+import digital.slovensko.autogram.drivers.TokenDriver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DriverRegistryTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEntryDefaults() throws IOException {
+        var module = Files.createFile(directory.resolve("module.so"));
+        var registry = createRegistry("{\"drivers\": [{\"name\": \"Custom\", \"path\": " + quote(module) + "}]}");
+
+        var driver = (PKCS11TokenDriver) getLast(registry);
+        assertEquals("Custom", driver.getName());
+        assertEquals(module, driver.getPath());
+        assertTrue(driver.needsPassword());
+        assertFalse(driver.signsDigest());
+        assertEquals(-1, driver.getSlotIndex());
+        assertTrue(registry.getAvailableDrivers().contains(driver));
+    }
+
+    @Test
+    void testEntryValues() throws IOException {
+        var module = directory.resolve("missing.so");
+        var registry = createRegistry("{\"drivers\": [{\"name\": \"Custom\", \"path\": " + quote(module) + ","
+                + " \"needsPassword\": false, \"signsDigest\": true, \"slotIndex\": 2}]}");
+
+        var driver = (PKCS11TokenDriver) getLast(registry);
+        assertFalse(driver.needsPassword());
+        assertTrue(driver.signsDigest());
+        assertEquals(2, driver.getSlotIndex());
+        assertFalse(registry.getAvailableDrivers().contains(driver));
+    }
+
+    @Test
+    void testEntryWithoutNameOrPathRejectsWholeFile() throws IOException {
+        var module = quote(directory.resolve("module.so"));
+        var valid = "{\"name\": \"Valid\", \"path\": " + module + "}";
+
+        for (var invalid : new String[]{"{\"path\": " + module + "}", "{\"name\": \"Invalid\"}"}) {
+            var registry = createRegistry("{\"drivers\": [" + valid + ", " + invalid + "]}");
+            assertEquals(TokenDriver.getBuiltInDrivers(), registry.getDrivers());
+            assertInstanceOf(DriverRegistryException.class, registry.takeError());
+        }
+    }
+
+    @Test
+    void testMissingOrMalformedFileLeavesBuiltInDrivers() throws IOException {
+        var missing = new DriverRegistry(directory.resolve("missing.json"));
+        assertEquals(TokenDriver.getBuiltInDrivers(), missing.getDrivers());
+        assertNull(missing.takeError());
+
+        var malformed = createRegistry("{\"drivers\": [");
+        assertEquals(TokenDriver.getBuiltInDrivers(), malformed.getDrivers());
+        assertInstanceOf(DriverRegistryException.class, malformed.takeError());
+        assertNull(malformed.takeError());
+    }
+
+    @Test
+    void testInvalidChangeKeepsLastGoodRegistry() throws Exception {
+        var registry = createRegistry("{\"drivers\": [{\"name\": \"Custom\", \"path\": "
+                + quote(directory.resolve("module.so")) + "}]}");
+        var driver = getLast(registry);
+        assertNull(registry.takeError());
+
+        var file = directory.resolve("drivers.json");
+        Files.writeString(file, "{\"drivers\": [");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10000));
+
+        // the change is picked up by the watch thread
+        AutogramException error = null;
+        for (var i = 0; i < 300 && error == null; i++) {
+            Thread.sleep(100);
+            error = registry.takeError();
+        }
+
+        assertInstanceOf(DriverRegistryException.class, error);
+        assertSame(driver, getLast(registry));
+    }
+
+    @Test
+    void testEntryNamedLikeBuiltInDriverReplacesIt() throws IOException {
+        var builtIns = TokenDriver.getBuiltInDrivers();
+        var name = builtIns.get(0).getName();
+        var registry = createRegistry("{\"drivers\": [{\"name\": \"" + name + "\", \"path\": "
+                + quote(directory.resolve("module.so")) + ", \"signsDigest\": true}]}");
+
+        var drivers = registry.getDrivers();
+        assertEquals(builtIns.size(), drivers.size());
+        assertEquals(name, drivers.get(0).getName());
+        assertTrue(drivers.get(0).signsDigest());
+        for (var i = 1; i < builtIns.size(); i++)
+            assertSame(builtIns.get(i), drivers.get(i));
+    }
+
+    private DriverRegistry createRegistry(String json) throws IOException {
+        var file = directory.resolve("drivers.json");
+        Files.writeString(file, json);
+        return new DriverRegistry(file);
+    }
+
+    private static TokenDriver getLast(DriverRegistry registry) {
+        var drivers = registry.getDrivers();
+        assertEquals(TokenDriver.getBuiltInDrivers().size() + 1, drivers.size());
+        return drivers.get(drivers.size() - 1);
+    }
+
+    private static String quote(Path path) {
+        return "\"" + path.toString().replace("\\", "\\\\") + "\"";
+    }
+}
@@ -0,0 +1,136 @@
+package digital.slovensko.autogram;
+
+import digital.slovensko.autogram.core.HashTree;
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.spi.DSSUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashTreeTests {
+    private static final DigestAlgorithm ALGORITHM = DigestAlgorithm.SHA256;
+
+    @Test
+    void testProofOfEveryLeafVerifies() {
+        for (var leafCount : new int[]{1, 2, 3, 5, 8}) {
+            var digests = digests(leafCount);
+            var tree = new HashTree(ALGORITHM, digests);
+
+            assertEquals(leafCount, tree.getLeafCount());
+            for (var i = 0; i < leafCount; i++) {
+                var proof = tree.getProof(i);
+                assertTrue(HashTree.verify(ALGORITHM, digests.get(i), proof, tree.getRoot()),
+                        "leaf " + i + " of " + leafCount);
+            }
+        }
+    }
+
+    @Test
+    void testRootFollowsRfc9162() {
+        var digests = digests(3);
+        var tree = new HashTree(ALGORITHM, digests);
+
+        // the third leaf has no sibling and is carried up unchanged
+        var left = hash(0x01, hash(0x00, digests.get(0)), hash(0x00, digests.get(1)));
+        assertArrayEquals(hash(0x01, left, hash(0x00, digests.get(2))), tree.getRoot());
+
+        assertArrayEquals(hash(0x00, digests.get(0)), new HashTree(ALGORITHM, digests(1)).getRoot());
+        assertTrue(new HashTree(ALGORITHM, digests(1)).getProof(0).isEmpty());
+    }
+
+    @Test
+    void testTamperedLeafDoesNotVerify() {
+        for (var leafCount : new int[]{1, 2, 3, 5, 8}) {
+            var digests = digests(leafCount);
+            var tree = new HashTree(ALGORITHM, digests);
+
+            for (var i = 0; i < leafCount; i++) {
+                var tampered = digests.get(i).clone();
+                tampered[0] ^= 1;
+                assertFalse(HashTree.verify(ALGORITHM, tampered, tree.getProof(i), tree.getRoot()),
+                        "leaf " + i + " of " + leafCount);
+
+                if (leafCount > 1) {
+                    var other = digests.get((i + 1) % leafCount);
+                    assertFalse(HashTree.verify(ALGORITHM, other, tree.getProof(i), tree.getRoot()),
+                            "proof of leaf " + i + " of " + leafCount + " used for another leaf");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTamperedSiblingDoesNotVerify() {
+        for (var leafCount : new int[]{2, 3, 5, 8}) {
+            var digests = digests(leafCount);
+            var tree = new HashTree(ALGORITHM, digests);
+
+            for (var i = 0; i < leafCount; i++) {
+                var proof = tree.getProof(i);
+                for (var step = 0; step < proof.size(); step++) {
+                    var hash = proof.get(step).hash().clone();
+                    hash[hash.length - 1] ^= 1;
+
+                    var tampered = new ArrayList<>(proof);
+                    tampered.set(step, new HashTree.ProofStep(proof.get(step).isSiblingLeft(), hash));
+                    assertFalse(HashTree.verify(ALGORITHM, digests.get(i), tampered, tree.getRoot()),
+                            "step " + step + " of leaf " + i + " of " + leafCount);
+
+                    var swapped = new ArrayList<>(proof);
+                    swapped.set(step, new HashTree.ProofStep(!proof.get(step).isSiblingLeft(), proof.get(step).hash()));
+                    assertFalse(HashTree.verify(ALGORITHM, digests.get(i), swapped, tree.getRoot()),
+                            "side of step " + step + " of leaf " + i + " of " + leafCount);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTamperedRootDoesNotVerify() {
+        for (var leafCount : new int[]{1, 2, 3, 5, 8}) {
+            var digests = digests(leafCount);
+            var tree = new HashTree(ALGORITHM, digests);
+
+            var root = tree.getRoot();
+            root[0] ^= 1;
+            for (var i = 0; i < leafCount; i++)
+                assertFalse(HashTree.verify(ALGORITHM, digests.get(i), tree.getProof(i), root));
+        }
+    }
+
+    @Test
+    void testEmptyTreeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new HashTree(ALGORITHM, List.of()));
+    }
+
+    private static List<byte[]> digests(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> DSSUtils.digest(ALGORITHM, ("document " + i).getBytes(StandardCharsets.UTF_8)))
+                .toList();
+    }
+
+    private static byte[] hash(int prefix, byte[]... parts) {
+        var length = 1;
+        for (var part : parts)
+            length += part.length;
+
+        var input = new byte[length];
+        input[0] = (byte) prefix;
+        var offset = 1;
+        for (var part : parts) {
+            System.arraycopy(part, 0, input, offset, part.length);
+            offset += part.length;
+        }
+
+        return DSSUtils.digest(ALGORITHM, input);
+    }
+}
@@ -0,0 +1,169 @@
+package digital.slovensko.autogram;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import digital.slovensko.autogram.server.EndpointUtils;
+import digital.slovensko.autogram.server.MultipartReader;
+import digital.slovensko.autogram.server.errors.MalformedBodyException;
+import eu.europa.esig.dss.enumerations.MimeTypeEnum;
+import eu.europa.esig.dss.model.InMemoryDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MultipartReaderTests {
+    private static final String BOUNDARY = "----autogram7MA4YWxkTrZu0gW";
+
+    @Test
+    void testReadsPartsWithBoundarySplitAcrossReads() throws IOException {
+        var document = new byte[20000];
+        new Random(1).nextBytes(document);
+        // starts of the delimiter that do not finish it must stay in the body
+        var parameters = "{\"level\": \"XAdES_BASELINE_B\"}\r\n--" + BOUNDARY.substring(0, 10) + "\r\r\n-";
+
+        var body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"document\"; filename=\"a.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(document);
+        body.writeBytes(("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=parameters\r\n\r\n"
+                + parameters
+                + "\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        for (var readSize : new int[]{1, 2, 3, 7, 8192}) {
+            var reader = new MultipartReader(limitReads(body.toByteArray(), readSize), BOUNDARY);
+
+            assertTrue(reader.nextPart());
+            assertEquals("document", reader.getName());
+            assertEquals("a.bin", reader.getFilename());
+            assertEquals("application/octet-stream", reader.getContentType());
+            var content = new ByteArrayOutputStream();
+            reader.readBodyTo(content);
+            assertArrayEquals(document, content.toByteArray());
+
+            assertTrue(reader.nextPart());
+            assertEquals("parameters", reader.getName());
+            assertNull(reader.getFilename());
+            assertEquals(parameters, reader.readBodyAsString());
+
+            assertFalse(reader.nextPart());
+        }
+    }
+
+    @Test
+    void testSkipsUnreadParts() throws IOException {
+        var body = "preamble\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"skipped\"\r\n\r\n"
+                + "skipped content\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"payloadMimeType\"\r\n\r\n"
+                + "text/plain\r\n--" + BOUNDARY + "--";
+
+        var reader = new MultipartReader(limitReads(body.getBytes(StandardCharsets.UTF_8), 8192), BOUNDARY);
+
+        assertTrue(reader.nextPart());
+        assertEquals("skipped", reader.getName());
+        assertTrue(reader.nextPart());
+        assertEquals("payloadMimeType", reader.getName());
+        assertEquals("text/plain", reader.readBodyAsString());
+        assertFalse(reader.nextPart());
+    }
+
+    @Test
+    void testSkipsPreambleWithBoundaryPrefix() throws IOException {
+        var part = "\r\nContent-Disposition: form-data; name=\"payloadMimeType\"\r\n\r\n"
+                + "text/plain\r\n--" + BOUNDARY + "--";
+        var preambles = new String[]{
+                "--" + BOUNDARY.substring(0, 10) + "x",
+                "-",
+                "---" + BOUNDARY.substring(0, 3),
+                "preamble\r\n--" + BOUNDARY.substring(0, 12) + "\r\n"};
+
+        for (var preamble : preambles) {
+            var body = preamble + "--" + BOUNDARY + part;
+            var reader = new MultipartReader(stream(body), BOUNDARY);
+
+            assertTrue(reader.nextPart(), preamble);
+            assertEquals("payloadMimeType", reader.getName());
+            assertEquals("text/plain", reader.readBodyAsString());
+            assertFalse(reader.nextPart());
+        }
+    }
+
+    @Test
+    void testMissingClosingDelimiterThrowsMalformedBodyException() throws IOException {
+        var start = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"document\"\r\n\r\n";
+
+        var truncatedBody = new MultipartReader(stream(start + "content"), BOUNDARY);
+        assertTrue(truncatedBody.nextPart());
+        assertThrows(MalformedBodyException.class, () -> truncatedBody.readBodyTo(new ByteArrayOutputStream()));
+
+        var truncatedDelimiter = new MultipartReader(stream(start + "content\r\n--" + BOUNDARY), BOUNDARY);
+        assertTrue(truncatedDelimiter.nextPart());
+        truncatedDelimiter.readBodyTo(new ByteArrayOutputStream());
+        assertThrows(MalformedBodyException.class, truncatedDelimiter::nextPart);
+
+        var noDelimiter = new MultipartReader(stream("content without any delimiter"), BOUNDARY);
+        assertThrows(MalformedBodyException.class, noDelimiter::nextPart);
+    }
+
+    @Test
+    void testParsesQuotedAndUnquotedBoundary() {
+        assertEquals("abc", MultipartReader.parseBoundary("multipart/form-data; boundary=abc"));
+        assertEquals("abc", MultipartReader.parseBoundary("multipart/form-data;boundary=abc"));
+        assertEquals("a b:c", MultipartReader.parseBoundary("multipart/form-data; boundary=\"a b:c\""));
+        assertEquals("xyz", MultipartReader.parseBoundary("Multipart/Form-Data; charset=UTF-8; BOUNDARY=xyz"));
+        assertNull(MultipartReader.parseBoundary("multipart/form-data"));
+        assertNull(MultipartReader.parseBoundary("application/json; boundary=abc"));
+        assertNull(MultipartReader.parseBoundary(null));
+    }
+
+    @Test
+    void testPercentEncodesSignerHeaders() {
+        var exchange = mock(HttpExchange.class);
+        var headers = new Headers();
+        when(exchange.getRequestHeaders()).thenReturn(new Headers());
+        when(exchange.getResponseHeaders()).thenReturn(headers);
+        when(exchange.getResponseBody()).thenReturn(new ByteArrayOutputStream());
+
+        var signer = "CN=Ján Nováček, O=Firma+Partneri s.r.o., C=SK";
+        var issuer = "CN=Issuer/CA 1, O=\"Ústav\"";
+        var document = new InMemoryDocument(new byte[]{1, 2, 3}, "signed.pdf", MimeTypeEnum.PDF);
+        EndpointUtils.respondWithSignedDocumentBytes(document, signer, issuer, exchange);
+
+        var signedBy = headers.getFirst("X-Signed-By");
+        var issuedBy = headers.getFirst("X-Issued-By");
+        assertEquals("CN%3DJ%C3%A1n%20Nov%C3%A1%C4%8Dek%2C%20O%3DFirma%2BPartneri%20s.r.o.%2C%20C%3DSK", signedBy);
+        assertEquals(signer, URLDecoder.decode(signedBy, StandardCharsets.UTF_8));
+        assertEquals(issuer, URLDecoder.decode(issuedBy, StandardCharsets.UTF_8));
+        assertTrue(issuedBy.chars().allMatch(c -> c > 0x20 && c < 0x7f));
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static InputStream limitReads(byte[] body, int readSize) {
+        return new ByteArrayInputStream(body) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, readSize));
+            }
+        };
+    }
+}
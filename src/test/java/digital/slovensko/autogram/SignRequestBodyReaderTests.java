@@ -0,0 +1,149 @@
+package digital.slovensko.autogram;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import digital.slovensko.autogram.server.EndpointUtils;
+import digital.slovensko.autogram.server.SignRequestBodyReader;
+import digital.slovensko.autogram.server.errors.MalformedBodyException;
+import digital.slovensko.autogram.util.SpillingOutputStream;
+import eu.europa.esig.dss.model.FileDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SignRequestBodyReaderTests {
+    @Test
+    void testReadsStringEscapes() throws Exception {
+        var json = "{\"document\": {\"content\": \"q\\\"b\\\\s\\/n\\nt\\tr\\r\\b\\f\\u00e9\\u010D\\ud83d\\ude00\"},"
+                + " \"payloadMimeType\": \"text/plain\"}";
+
+        var body = SignRequestBodyReader.read(stream(json));
+
+        var expected = "q\"b\\s/n\nt\tr\r\b\f\u00e9\u010d\ud83d\ude00";
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), body.getDocument().openStream().readAllBytes());
+    }
+
+    @Test
+    void testReadsSurrogatePairSplitAcrossChunks() throws Exception {
+        // the escaped pair lands on both sides of a chunk written by the content sink
+        var prefix = "a".repeat(8191);
+        var json = "{\"document\": {\"content\": \"" + prefix + "\\ud83d\\ude00" + "a".repeat(8192) + "\"},"
+                + " \"payloadMimeType\": \"text/plain\"}";
+
+        var body = SignRequestBodyReader.read(stream(json));
+
+        var expected = prefix + "\ud83d\ude00" + "a".repeat(8192);
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), body.getDocument().openStream().readAllBytes());
+    }
+
+    @Test
+    void testDecodesBase64ContentSplitAcrossReads() throws Exception {
+        var bytes = randomBytes(30000);
+        var json = "{\"payloadMimeType\": \"application/octet-stream;base64\", \"document\": {\"filename\": \"a.bin\","
+                + " \"content\": \"" + Base64.getEncoder().encodeToString(bytes) + "\"}}";
+
+        // at most 1000 bytes per read, so neither the read buffer nor the decoded chunks line up with the content
+        var body = SignRequestBodyReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        });
+
+        assertArrayEquals(bytes, body.getDocument().openStream().readAllBytes());
+    }
+
+    @Test
+    void testDecodesBase64ContentWhenPayloadMimeTypeComesAfterIt() throws Exception {
+        var bytes = randomBytes(20000);
+        var json = "{\"document\": {\"content\": \"" + Base64.getEncoder().encodeToString(bytes) + "\"},"
+                + " \"payloadMimeType\": \"application/octet-stream;base64\"}";
+
+        var body = SignRequestBodyReader.read(stream(json));
+
+        assertArrayEquals(bytes, body.getDocument().openStream().readAllBytes());
+    }
+
+    @Test
+    void testSpillsLargeContentToTemporaryFileAndDeletesIt() throws Exception {
+        var bytes = randomBytes(SpillingOutputStream.DEFAULT_THRESHOLD + 500000);
+        var json = "{\"payloadMimeType\": \"application/octet-stream;base64\", \"document\": {\"content\": \""
+                + Base64.getEncoder().encodeToString(bytes) + "\"}}";
+
+        var body = SignRequestBodyReader.read(stream(json));
+        var document = body.getDocument();
+
+        var file = assertInstanceOf(FileDocument.class, document).getFile();
+        assertTrue(file.exists());
+        try (var content = document.openStream()) {
+            assertArrayEquals(bytes, content.readAllBytes());
+        }
+
+        body.discardDecodedContent();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void testSpillingOutputStreamKeepsSmallContentInMemory() throws IOException {
+        var output = new SpillingOutputStream(4);
+        output.write(new byte[]{1, 2, 3, 4});
+        assertFalse(output.isSpilled());
+
+        output.write(5);
+        assertTrue(output.isSpilled());
+
+        var document = output.toDocument();
+        try (var content = document.openStream()) {
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, content.readAllBytes());
+        }
+
+        SpillingOutputStream.discard(document);
+        assertFalse(((FileDocument) document).getFile().exists());
+    }
+
+    @Test
+    void testMalformedBodiesThrowMalformedBodyException() {
+        var bodies = List.of(
+                "",
+                "[]",
+                "{\"document\": {\"content\": \"abc\"",
+                "{\"document\": {\"content\": \"a\\xb\"}}",
+                "{\"document\": {\"content\": \"\\u00g1\"}}",
+                "{\"document\": {\"content\": 1}}",
+                "{\"document\" {\"content\": \"abc\"}}",
+                "{\"document\": {\"content\": \"abc\"} \"payloadMimeType\": \"text/plain\"}",
+                "{\"document\": nul}");
+
+        for (var body : bodies) {
+            var exchange = mock(HttpExchange.class);
+            when(exchange.getRequestHeaders()).thenReturn(new Headers());
+            when(exchange.getRequestBody()).thenReturn(stream(body));
+
+            assertThrows(MalformedBodyException.class, () -> EndpointUtils.readSignRequestBody(exchange), body);
+        }
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] randomBytes(int length) {
+        var bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
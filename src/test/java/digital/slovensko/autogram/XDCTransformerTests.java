@@ -13,6 +13,7 @@ import javax.xml.crypto.dsig.CanonicalizationMethod;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class XDCTransformerTests {
@@ -42,4 +43,49 @@ class XDCTransformerTests {
 
         assertEquals(-1, transformed.lastIndexOf(":p>"));
     }
+
+    // expected containers were written by the DOM path before the streaming one existed
+    @Test
+    void testWritesSameContainerAsBefore() throws IOException {
+        var transformation = new String(this.getClass().getResourceAsStream("abc.xslt").readAllBytes());
+        var schema = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"/>";
+
+        assertWritesContainer(createParameters(schema, transformation), "abc.xml", "abc-container.xml");
+    }
+
+    @Test
+    void testWritesSameMarkupAsBefore() throws IOException {
+        assertWritesContainer(createParameters(null, null), "markup.xml", "markup-container.xml");
+    }
+
+    private static SigningParameters createParameters(String schema, String transformation) {
+        return new SigningParameters(
+            SignatureLevel.XAdES_BASELINE_B,
+            ASiCContainerType.ASiC_E,
+            "http://data.gov.sk/def/container/xmldatacontainer+xml/1.1",
+            SignaturePackaging.ENVELOPING,
+            DigestAlgorithm.SHA256,
+            false,
+            CanonicalizationMethod.INCLUSIVE,
+            CanonicalizationMethod.INCLUSIVE,
+            CanonicalizationMethod.INCLUSIVE,
+            schema,
+            transformation,
+            "id1/asa",
+            false);
+    }
+
+    private void assertWritesContainer(SigningParameters params, String document, String container) throws IOException {
+        var content = this.getClass().getResourceAsStream(document).readAllBytes();
+        var expected = this.getClass().getResourceAsStream(container).readAllBytes();
+
+        var dom = XDCTransformer.buildFromSigningParameters(params)
+            .transformWithDOM(new InMemoryDocument(content, "document.xml"));
+        var streamed = XDCTransformer.buildFromSigningParameters(params)
+            .transformWithStreaming(new InMemoryDocument(content, "document.xml"));
+
+        assertArrayEquals(expected, dom.openStream().readAllBytes());
+        assertArrayEquals(expected, streamed.openStream().readAllBytes());
+        assertEquals("document.xml", streamed.getName());
+    }
 }